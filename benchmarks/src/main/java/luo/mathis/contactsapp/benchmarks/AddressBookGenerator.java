@@ -0,0 +1,61 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactCsv;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates synthetic address books that look like the ones the app writes: a mix of filled in and
+ * "Not Filled In" fields, ###-###-#### and digit-only phone numbers, and DD/MM/YYYY birthdays
+ */
+public final class AddressBookGenerator {
+    private static final String notFilledIn = "Not Filled In";
+    private static final String[] firstNames = {"Ada", "Ben", "Chloe", "Dev", "Emma", "Farid", "Grace", "Hiro", "Ines", "Jun"};
+    private static final String[] lastNames = {"Smith", "Tremblay", "Nguyen", "Garcia", "Roy", "Martin", "Lee", "Gagnon", "Brown", "Wilson"};
+    private static final String[] streets = {"Main Street", "King Street West", "Rue Sainte-Catherine", "Oak Avenue", "Maple Drive"};
+
+    private AddressBookGenerator() {
+    }
+    /**
+     * Returns the given number of contacts, always the same ones for the same seed
+     */
+    public static List<Contact> contacts(int rows, long seed) {
+        Random random = new Random(seed);
+        List<Contact> contacts = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String first = firstNames[random.nextInt(firstNames.length)];
+            String last = lastNames[random.nextInt(lastNames.length)];
+            String name = first + " " + last + " " + i;
+            String email = random.nextInt(5) == 0 ? notFilledIn : first.toLowerCase() + "." + last.toLowerCase() + i + "@example.com";
+            String address = random.nextInt(4) == 0 ? notFilledIn : (1 + random.nextInt(9999)) + " " + streets[random.nextInt(streets.length)];
+            String birthday = random.nextInt(3) == 0 ? notFilledIn
+                    : String.format("%02d/%02d/%04d", 1 + random.nextInt(28), 1 + random.nextInt(12), 1940 + random.nextInt(80));
+            String phoneNumbers = switch (random.nextInt(4)) {
+                case 0 -> notFilledIn;
+                case 1 -> phone(random) + ";" + phone(random);
+                case 2 -> "44" + (1000000000L + random.nextInt(999999999));
+                default -> phone(random);
+            };
+            contacts.add(new Contact(name, phoneNumbers, email, address, birthday));
+        }
+        return contacts;
+    }
+    /**
+     * Writes the given number of contacts to a CSV file in the app's format
+     */
+    public static void writeCsv(Path path, int rows, long seed) throws IOException {
+        List<String[]> lines = new ArrayList<>(rows);
+        for (Contact contact : contacts(rows, seed)) {
+            lines.add(ContactCsv.toRow(contact));
+        }
+        ContactCsv.write(path, lines);
+    }
+    private static String phone(Random random) {
+        return (200 + random.nextInt(800)) + "-" + (200 + random.nextInt(800)) + "-" + (1000 + random.nextInt(9000));
+    }
+}
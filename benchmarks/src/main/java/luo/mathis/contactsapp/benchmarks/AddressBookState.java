@@ -0,0 +1,57 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactCsv;
+import luo.mathis.contactsapp.ContactSnapshot;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic address book of the benchmarked size, in memory and as a CSV file and binary snapshot in a
+ * temporary directory
+ */
+@State(Scope.Benchmark)
+public class AddressBookState {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    public Path directory;
+    public Path csv;
+    public Path binary;
+    public List<Contact> contacts;
+    public List<String[]> csvRows;
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        directory = Files.createTempDirectory("contacts-bench");
+        csv = directory.resolve("ListOfContacts.csv");
+        contacts = AddressBookGenerator.contacts(rows, 42);
+        csvRows = new ArrayList<>(rows);
+        for (Contact contact : contacts) {
+            csvRows.add(ContactCsv.toRow(contact));
+        }
+        ContactCsv.write(csv, csvRows);
+        binary = directory.resolve("ListOfContacts.bin");
+        ContactSnapshot.write(binary, csvRows);
+    }
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks without a display, for a CI box. The benchmarks only use the app's data classes and
+ * JavaFX collections, the JavaFX toolkit is never started.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar luo.mathis.contactsapp.benchmarks.BenchmarkRunner [regex] [rows...]
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : "luo\\.mathis\\.contactsapp\\.benchmarks\\..*");
+        if (args.length > 1) {
+            String[] rows = new String[args.length - 1];
+            System.arraycopy(args, 1, rows, 0, rows.length);
+            options.param("rows", rows);
+        }
+        Options built = options
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .jvmArgsAppend("-Djava.awt.headless=true", "-Xmx4g")
+                .build();
+        new Runner(built).run();
+    }
+}
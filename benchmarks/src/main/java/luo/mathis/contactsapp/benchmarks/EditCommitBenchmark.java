@@ -0,0 +1,70 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactCsv;
+import luo.mathis.contactsapp.ContactField;
+import luo.mathis.contactsapp.ContactJournal;
+import luo.mathis.contactsapp.ContactLoader;
+import luo.mathis.contactsapp.ContactStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One cell edit from commit to disk: the journalled in-memory update the app does now, and the old
+ * rewrite-the-file-then-reload-the-table path as a baseline
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EditCommitBenchmark {
+
+    @State(Scope.Thread)
+    public static class Session {
+        ContactStore store;
+        ContactJournal journal;
+        int edits;
+
+        @Setup(Level.Iteration)
+        public void open(AddressBookState book) throws IOException {
+            store = new ContactStore();
+            journal = new ContactJournal(book.csv, Integer.MAX_VALUE);
+            List<Contact> contacts = new ArrayList<>(book.rows);
+            long checksum = new ContactLoader(book.csv, 5000).read(contacts::addAll);
+            store.addAll(contacts);
+            store.replay(journal.recover(checksum));
+            // journal writes run on this thread, there is no persistence service in the benchmark
+            store.setJournal(journal, null);
+        }
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            journal.close();
+        }
+    }
+
+    @Benchmark
+    public void journalledEdit(Session session) {
+        ContactStore store = session.store;
+        int row = session.edits++ % store.size();
+        store.update(store.get(row), ContactField.ADDRESS, "Edit " + session.edits);
+    }
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int rewriteAndReloadBaseline(AddressBookState book) throws IOException {
+        // forceWriteToCSV followed by the old refreshTable()
+        ContactCsv.write(book.directory.resolve("baseline.csv"), book.csvRows);
+        List<Contact> reloaded = new ArrayList<>(book.rows);
+        new ContactLoader(book.directory.resolve("baseline.csv"), 5000).read(reloaded::addAll);
+        return reloaded.size();
+    }
+}
@@ -0,0 +1,86 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactColumns;
+import luo.mathis.contactsapp.ContactCsv;
+import luo.mathis.contactsapp.ContactField;
+import luo.mathis.contactsapp.ContactLoader;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compares the heap taken by a loaded address book as Contact objects (what the app keeps) and packed in
+ * ContactColumns (what paged mode caches its pages as), both measured after a full GC and as estimated by
+ * ContactColumns, and checks that every row reads back the same from the columns. Heap is not something JMH
+ * measures, so this is a plain program.
+ * <p>
+ * Usage: java -Xmx4g -cp benchmarks/target/benchmarks.jar luo.mathis.contactsapp.benchmarks.MemoryFootprintBenchmark [rows]
+ */
+public final class MemoryFootprintBenchmark {
+
+    private MemoryFootprintBenchmark() {
+    }
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path directory = Files.createTempDirectory("contacts-footprint");
+        Path csv = directory.resolve("ListOfContacts.csv");
+        List<String[]> csvRows = new ArrayList<>(rows);
+        for (Contact contact : AddressBookGenerator.contacts(rows, 42)) {
+            csvRows.add(ContactCsv.toRow(contact));
+        }
+        ContactCsv.write(csv, csvRows);
+        csvRows = null;
+
+        long base = usedHeap();
+        List<Contact> contacts = new ArrayList<>(rows);
+        new ContactLoader(csv, 5000).read(contacts::addAll);
+        long objects = usedHeap() - base;
+        ContactColumns columns = new ContactColumns(contacts.size());
+        columns.addAll(contacts);
+        long packed = usedHeap() - base - objects;
+
+        int mismatches = 0;
+        for (int i = 0; i < contacts.size(); i++) {
+            if (!same(contacts.get(i), columns.get(i))) {
+                mismatches++;
+            }
+        }
+        System.out.printf("%d contacts%n", contacts.size());
+        System.out.printf("  Contact objects   measured %6.1f MB, estimated %6.1f MB%n",
+                megabytes(objects), megabytes(ContactColumns.estimateObjectFootprint(contacts)));
+        System.out.printf("  ContactColumns    measured %6.1f MB, estimated %6.1f MB%n",
+                megabytes(packed), megabytes(columns.footprint()));
+        System.out.printf("  rows that read back differently: %d%n", mismatches);
+        Reference.reachabilityFence(contacts);
+        Reference.reachabilityFence(columns);
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(directory);
+    }
+    private static boolean same(Contact expected, Contact actual) {
+        if (expected.getId() != actual.getId()) {
+            return false;
+        }
+        for (ContactField field : ContactField.values()) {
+            if (!Objects.equals(field.get(expected), field.get(actual))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
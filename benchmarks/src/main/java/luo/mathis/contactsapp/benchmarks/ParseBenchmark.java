@@ -0,0 +1,57 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactCsv;
+import luo.mathis.contactsapp.ContactLoader;
+import luo.mathis.contactsapp.ContactSnapshot;
+import luo.mathis.contactsapp.CsvReader;
+import luo.mathis.contactsapp.MappedCsvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the contacts file: the memory-mapped parser, the chunked loader on top of it, the binary snapshot,
+ * the streaming CSV reader used for imports, and the old BufferedReader + split reader as a baseline
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+    @Benchmark
+    public MappedCsvParser.Stats mappedParser(AddressBookState book, Blackhole blackhole) throws IOException {
+        return new MappedCsvParser().parse(book.csv, blackhole::consume);
+    }
+    @Benchmark
+    public long chunkedLoader(AddressBookState book, Blackhole blackhole) throws IOException {
+        return new ContactLoader(book.csv, 5000).read(blackhole::consume);
+    }
+    @Benchmark
+    public MappedCsvParser.Stats binarySnapshot(AddressBookState book, Blackhole blackhole) throws IOException {
+        return ContactSnapshot.read(book.binary, blackhole::consume);
+    }
+    @Benchmark
+    public void streamingCsvReader(AddressBookState book, Blackhole blackhole) throws IOException {
+        try (CsvReader reader = CsvReader.open(book.csv, ContactCsv.delimiter, false)) {
+            reader.forEach(row -> blackhole.consume(ContactCsv.fromRow(row)));
+        }
+    }
+    @Benchmark
+    public void bufferedReaderSplit(AddressBookState book, Blackhole blackhole) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(book.csv)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                // the old reader, which did not understand quoted fields
+                Contact contact = ContactCsv.fromRow(line.split(",", -1));
+                blackhole.consume(contact);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.ContactCsv;
+import luo.mathis.contactsapp.ContactSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing contacts: a full rewrite of the CSV file (what every edit used to cost, and what a save without the
+ * journal still costs) or the binary snapshot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerialiseBenchmark {
+
+    @Benchmark
+    public long fullRewrite(AddressBookState book) throws IOException {
+        return ContactCsv.write(book.directory.resolve("rewrite.csv"), book.csvRows);
+    }
+    @Benchmark
+    public long binaryRewrite(AddressBookState book) throws IOException {
+        return ContactSnapshot.write(book.directory.resolve("rewrite.bin"), book.csvRows);
+    }
+}
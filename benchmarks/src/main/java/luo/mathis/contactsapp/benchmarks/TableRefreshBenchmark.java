@@ -0,0 +1,90 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.transformation.FilteredList;
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactField;
+import luo.mathis.contactsapp.ContactSortKeys;
+import luo.mathis.contactsapp.ContactSortedList;
+import luo.mathis.contactsapp.ContactStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the table gets to see of a change: the store publishing it and the change going through the same
+ * FilteredList and ContactSortedList the table shows, sorted by name. The store publishes with Runnable::run
+ * instead of Platform::runLater, so this runs headless and each call includes the whole refresh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TableRefreshBenchmark {
+    private static final int batch = 100;
+
+    @State(Scope.Thread)
+    public static class Table {
+        ContactStore store;
+        ContactSortedList sorted;
+        long changes;
+        int edits;
+
+        @Setup(Level.Iteration)
+        public void open(AddressBookState book) {
+            store = new ContactStore(Runnable::run);
+            List<Contact> contacts = new ArrayList<>(book.rows);
+            for (Contact contact : book.contacts) {
+                contacts.add(contact.copy());
+            }
+            store.addAll(contacts);
+            sorted = new ContactSortedList(new FilteredList<>(store.getContacts()));
+            sorted.setSortOrder(List.of(new ContactSortKeys.SortColumn(ContactField.NAME, true)));
+            // stands in for the table's listener
+            sorted.addListener((ListChangeListener<Contact>) change -> changes++);
+        }
+    }
+
+    @Benchmark
+    public long editOtherField(Table table) {
+        ContactStore store = table.store;
+        store.update(store.get(table.edits++ % store.size()), ContactField.ADDRESS, "Edit " + table.edits);
+        return table.changes;
+    }
+    @Benchmark
+    public long editSortedField(Table table) {
+        ContactStore store = table.store;
+        // moves the row to the other end of the sorted view and back
+        String name = table.edits % 2 == 0 ? "zzz " + table.edits : "aaa " + table.edits;
+        store.update(store.get(table.edits++ % store.size()), ContactField.NAME, name);
+        return table.changes;
+    }
+    @Benchmark
+    public long addAndDelete(Table table) {
+        ContactStore store = table.store;
+        Contact added = new Contact(0, "New " + table.edits++, "555-123-4567", "new@example.com", "1 Main Street",
+                "01/02/1990");
+        store.add(added);
+        store.remove(added);
+        return table.changes;
+    }
+    @Benchmark
+    public long importAndDeleteBatch(Table table) {
+        ContactStore store = table.store;
+        List<Contact> imported = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            imported.add(new Contact(0, "Imported " + table.edits++, "555-123-4567", "new@example.com",
+                    "1 Main Street", "01/02/1990"));
+        }
+        store.importAll(imported);
+        store.removeAll(imported);
+        return table.changes;
+    }
+}
@@ -0,0 +1,53 @@
+package luo.mathis.contactsapp.benchmarks;
+
+import luo.mathis.contactsapp.Contact;
+import luo.mathis.contactsapp.ContactValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating an imported address book: the parallel validateAll, the same checks one by one, and the old
+ * String.matches regexes as a baseline. Also the single birthday check run on every birthday edit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    private final ContactValidator validator = new ContactValidator();
+    // a field rather than a literal, so the check cannot be constant folded
+    private String leapDay = "29/02/2024";
+
+    @Benchmark
+    public List<ContactValidator.Invalid> validateAllParallel(AddressBookState book) {
+        return validator.validateAll(book.contacts);
+    }
+    @Benchmark
+    public void validateSequential(AddressBookState book, Blackhole blackhole) {
+        for (Contact contact : book.contacts) {
+            blackhole.consume(validator.validate(contact));
+        }
+    }
+    @Benchmark
+    public void regexBaseline(AddressBookState book, Blackhole blackhole) {
+        for (Contact contact : book.contacts) {
+            blackhole.consume(contact.getPhoneNumbers().matches("(\\d{3}-\\d{3}-\\d{4})(;\\d{3}-\\d{3}-\\d{4})*")
+                    || contact.getPhoneNumbers().matches("(\\d+)(;\\d+)*"));
+            blackhole.consume(contact.getEmail().matches(".+@.+\\..+"));
+            blackhole.consume(contact.getBirthday().matches("\\d{2}/\\d{2}/\\d{4}"));
+        }
+    }
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public ContactValidator.Result birthdayEdit() {
+        // a leap day exercises the isLeapYear branch
+        return validator.validateBirthday(leapDay);
+    }
+}
@@ -0,0 +1,186 @@
+package luo.mathis.contactsapp;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Saves a repository a short while after it changes instead of after every edit. The edits made within the
+ * window after the first unsaved one (or until maxPendingEdits of them pile up) are saved and flushed to disk
+ * together, once, on the autosave thread. close() saves whatever is left before it returns. A save that
+ * fails is recorded in ContactMetrics and tried again after another window, its edits still unsaved.
+ */
+public class AutosaveScheduler implements Closeable {
+
+    /**
+     * What the scheduler has done so far. Coalesced edits are the ones saved by another edit's flush.
+     */
+    public record Stats(long flushes, long edits, long coalescedEdits, long lastFlushMillis, long maxFlushMillis,
+                        double averageFlushMillis) {
+    }
+
+    private final ContactRepository repository;
+    private final long windowMillis;
+    private final int maxPendingEdits;
+    private final Executor callbackExecutor;
+    private final ScheduledExecutorService timer;
+    private Consumer<Boolean> onUnsavedChanged = unsaved -> {
+    };
+    // everything below is guarded by this
+    private ScheduledFuture<?> scheduled;
+    private int pendingEdits = 0;
+    private boolean unsaved = false;
+    private boolean closed = false;
+    private long flushes = 0;
+    private long edits = 0;
+    private long coalescedEdits = 0;
+    private long lastFlushNanos = 0;
+    private long maxFlushNanos = 0;
+    private long totalFlushNanos = 0;
+
+    /**
+     * Creates the scheduler and its (daemon) autosave thread
+     *
+     * @param windowMillis     how long after the first unsaved edit the save runs
+     * @param maxPendingEdits  how many unsaved edits make the save run right away
+     * @param callbackExecutor where the unsaved-changes callback runs
+     */
+    public AutosaveScheduler(ContactRepository repository, long windowMillis, int maxPendingEdits,
+                             Executor callbackExecutor) {
+        this.repository = repository;
+        this.windowMillis = windowMillis;
+        this.maxPendingEdits = maxPendingEdits;
+        this.callbackExecutor = callbackExecutor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "contacts-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /**
+     * Sets the callback told whether there are unsaved changes, whenever that changes
+     */
+    public void setOnUnsavedChanged(Consumer<Boolean> onUnsavedChanged) {
+        this.onUnsavedChanged = onUnsavedChanged;
+    }
+    /**
+     * Records an edit of the repository, which is saved once the window is over
+     */
+    public synchronized void changed() {
+        edits++;
+        pendingEdits++;
+        if (!unsaved) {
+            unsaved = true;
+            report(true);
+        }
+        schedule(pendingEdits >= maxPendingEdits ? 0 : windowMillis);
+    }
+    /**
+     * Saves the changes right away instead of at the end of the window (still on the autosave thread)
+     */
+    public synchronized void saveNow() {
+        schedule(0);
+    }
+    /**
+     * Returns whether there are changes that are not on disk yet
+     */
+    public synchronized boolean hasUnsavedChanges() {
+        return unsaved;
+    }
+    /**
+     * Returns the counters so far
+     */
+    public synchronized Stats getStats() {
+        double average = flushes == 0 ? 0 : totalFlushNanos / 1e6 / flushes;
+        return new Stats(flushes, edits, coalescedEdits, lastFlushNanos / 1_000_000, maxFlushNanos / 1_000_000,
+                average);
+    }
+    /**
+     * Stops the autosave thread and saves what is not saved yet on the calling thread (safe to call more than once)
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+        timer.shutdown();
+        try {
+            // let a save that is running finish first
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (hasUnsavedChanges()) {
+            flush();
+        }
+    }
+    /**
+     * Makes sure a save runs within delayMillis. A save that is scheduled later is moved forward, one that
+     * is already running schedules another one if edits came in meanwhile.
+     */
+    private void schedule(long delayMillis) {
+        if (closed) {
+            return; // close() saves everything
+        }
+        if (scheduled != null) {
+            if (scheduled.getDelay(TimeUnit.MILLISECONDS) <= delayMillis || !scheduled.cancel(false)) {
+                return;
+            }
+        }
+        scheduled = timer.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    private void flush() {
+        int saved;
+        synchronized (this) {
+            scheduled = null;
+            saved = pendingEdits;
+            pendingEdits = 0;
+        }
+        long start = System.nanoTime();
+        try {
+            // rewrites the file if it is not journalled, then waits until every change so far is on disk
+            repository.save();
+            repository.flush();
+        } catch (RuntimeException e) {
+            ContactMetrics.failed("autosave", e);
+            synchronized (this) {
+                pendingEdits += saved;
+                schedule(windowMillis); // tries again, unless closing
+            }
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        synchronized (this) {
+            flushes++;
+            coalescedEdits += Math.max(0, saved - 1);
+            lastFlushNanos = nanos;
+            maxFlushNanos = Math.max(maxFlushNanos, nanos);
+            totalFlushNanos += nanos;
+            if (pendingEdits > 0) {
+                schedule(windowMillis); // edits made while saving
+            } else if (unsaved) {
+                unsaved = false;
+                report(false);
+            }
+        }
+    }
+    private void report(boolean hasUnsaved) {
+        Consumer<Boolean> callback = onUnsavedChanged;
+        try {
+            callbackExecutor.execute(() -> callback.accept(hasUnsaved));
+        } catch (IllegalStateException e) {
+            // the FX toolkit is already gone while saving on exit
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The contacts by the day of the year of their birthday, kept up to date by listening to the contact list. The
+ * birthdays of the next days are found by visiting one bucket per day, so a query costs as much as the number
+ * of contacts it returns, not the size of the list. Contacts without a valid birthday are not indexed.
+ * <p>
+ * Days are numbered as in a leap year, so 29 February has its own bucket. In other years those birthdays are
+ * counted on 28 February.
+ */
+public class BirthdayIndex {
+    private static final int daysInYear = 366;
+    private static final int february29 = bucket(2, 29);
+    // a change removing more contacts than this indexes the list again instead of searching the buckets
+    private static final int rebuildThreshold = 1024;
+
+    /**
+     * A birthday on the given date, and the age the contact turns on it
+     */
+    public record Upcoming(Contact contact, LocalDate date, int age) {
+    }
+
+    private final ObservableList<Contact> contacts;
+    private final Bucket[] buckets = new Bucket[daysInYear];
+    private int size = 0;
+
+    /**
+     * Indexes the contacts currently in the list and follows every later change
+     */
+    public BirthdayIndex(ObservableList<Contact> contacts) {
+        this.contacts = contacts;
+        for (int i = 0; i < daysInYear; i++) {
+            buckets[i] = new Bucket();
+        }
+        contacts.forEach(this::add);
+        contacts.addListener((ListChangeListener<Contact>) change -> {
+            int removed = 0;
+            while (change.next()) {
+                removed += change.getRemovedSize();
+            }
+            if (removed > rebuildThreshold) {
+                rebuild();
+                return;
+            }
+            change.reset();
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+                // an edited contact is replaced, so its old birthday is removed and the new one added
+                change.getRemoved().forEach(this::remove);
+                change.getAddedSubList().forEach(this::add);
+            }
+        });
+    }
+    /**
+     * Returns the birthdays from the given date (included) to the given number of days after it, by date.
+     * Contacts born after a date do not have a birthday on it. At most a year is visited, so no birthday is
+     * listed twice.
+     */
+    public List<Upcoming> upcoming(LocalDate from, int days) {
+        List<Upcoming> upcoming = new ArrayList<>();
+        // 365 or 366 days, whichever the year starting at from has
+        long yearLength = ChronoUnit.DAYS.between(from, from.plusYears(1));
+        for (int i = 0; i < Math.min(days, yearLength); i++) {
+            LocalDate date = from.plusDays(i);
+            collect(buckets[bucket(date.getMonthValue(), date.getDayOfMonth())], date, upcoming);
+            if (date.getMonthValue() == 2 && date.getDayOfMonth() == 28 && !date.isLeapYear()) {
+                collect(buckets[february29], date, upcoming);
+            }
+        }
+        return upcoming;
+    }
+    /**
+     * Returns how many contacts are indexed
+     */
+    public int size() {
+        return size;
+    }
+    private static void collect(Bucket bucket, LocalDate date, List<Upcoming> upcoming) {
+        for (int i = 0; i < bucket.size; i++) {
+            Contact contact = bucket.contacts[i];
+            int age = date.getYear() - LocalDate.ofEpochDay(contact.getBirthdayEpochDay()).getYear();
+            if (age >= 0) {
+                upcoming.add(new Upcoming(contact, date, age));
+            }
+        }
+    }
+    private void add(Contact contact) {
+        int bucket = bucket(contact);
+        if (bucket >= 0) {
+            buckets[bucket].add(contact);
+            size++;
+        }
+    }
+    private void remove(Contact contact) {
+        int bucket = bucket(contact);
+        if (bucket >= 0 && buckets[bucket].remove(contact)) {
+            size--;
+        }
+    }
+    private void rebuild() {
+        for (Bucket bucket : buckets) {
+            bucket.clear();
+        }
+        size = 0;
+        contacts.forEach(this::add);
+    }
+    /**
+     * Returns the bucket of a contact's birthday, or -1 if it has none
+     */
+    private static int bucket(Contact contact) {
+        int epochDay = contact.getBirthdayEpochDay();
+        if (epochDay == ContactValidator.noDate) {
+            return -1;
+        }
+        LocalDate birthday = LocalDate.ofEpochDay(epochDay);
+        return bucket(birthday.getMonthValue(), birthday.getDayOfMonth());
+    }
+    private static int bucket(int month, int day) {
+        return Month.of(month).firstDayOfYear(true) + day - 2;
+    }
+
+    /**
+     * The contacts born on one day of the year, in no particular order
+     */
+    private static final class Bucket {
+        Contact[] contacts = new Contact[4];
+        int size;
+
+        void add(Contact contact) {
+            if (size == contacts.length) {
+                contacts = Arrays.copyOf(contacts, size * 2);
+            }
+            contacts[size++] = contact;
+        }
+        /**
+         * Removes the contact (the same instance) by moving the last one into its place
+         */
+        boolean remove(Contact contact) {
+            for (int i = 0; i < size; i++) {
+                if (contacts[i] == contact) {
+                    contacts[i] = contacts[--size];
+                    contacts[size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+        void clear() {
+            contacts = new Contact[4];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Imports contacts from an external CSV file. The file is read in chunks of rows. Each chunk is mapped to
+ * contacts, normalised and validated on a ForkJoinPool while the next one is being read, and the results are
+ * collected in file order. Only a few chunks are in flight at a time, so the raw rows of a large file are
+ * never all in memory at once.
+ * <p>
+ * If the first row names its columns (Name, E-mail, Phone, First Name, ...) it is used as a header, otherwise
+ * the columns are taken in the order of the app's own file.
+ */
+public class BulkImporter {
+    private static final String notFilledIn = "Not Filled In";
+    // column roles besides the contact fields
+    private static final int ignored = -1;
+    private static final int firstName = -2;
+    private static final int lastName = -3;
+    private static final Map<String, Integer> headerNames = Map.ofEntries(
+            Map.entry("name", ContactField.NAME.ordinal()),
+            Map.entry("fullname", ContactField.NAME.ordinal()),
+            Map.entry("displayname", ContactField.NAME.ordinal()),
+            Map.entry("firstname", firstName),
+            Map.entry("givenname", firstName),
+            Map.entry("lastname", lastName),
+            Map.entry("surname", lastName),
+            Map.entry("familyname", lastName),
+            Map.entry("email", ContactField.EMAIL.ordinal()),
+            Map.entry("emailaddress", ContactField.EMAIL.ordinal()),
+            Map.entry("mail", ContactField.EMAIL.ordinal()),
+            Map.entry("address", ContactField.ADDRESS.ordinal()),
+            Map.entry("homeaddress", ContactField.ADDRESS.ordinal()),
+            Map.entry("streetaddress", ContactField.ADDRESS.ordinal()),
+            Map.entry("birthday", ContactField.BIRTHDAY.ordinal()),
+            Map.entry("birthdate", ContactField.BIRTHDAY.ordinal()),
+            Map.entry("dateofbirth", ContactField.BIRTHDAY.ordinal()),
+            Map.entry("dob", ContactField.BIRTHDAY.ordinal()),
+            Map.entry("phone", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("phones", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("phonenumber", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("phonenumbers", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("mobile", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("mobilephone", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("homephone", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("workphone", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("telephone", ContactField.PHONE_NUMBERS.ordinal()),
+            Map.entry("tel", ContactField.PHONE_NUMBERS.ordinal()));
+    private static final Pattern dateSeparators = Pattern.compile("[/.\\-]");
+    // the app's own column order: name, email, address, birthday, phone numbers
+    private static final int[] fileColumns = {ContactField.NAME.ordinal(), ContactField.EMAIL.ordinal(),
+            ContactField.ADDRESS.ordinal(), ContactField.BIRTHDAY.ordinal(), ContactField.PHONE_NUMBERS.ordinal()};
+
+    /**
+     * How far an import has got
+     */
+    public record Progress(long rowsRead, long imported, long rejected, long nanos) {
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rowsRead * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * A row that was not imported, by its position in the source (counting from 1, the header included)
+     */
+    public record Rejected(long row, String message) {
+    }
+
+    /**
+     * The contacts read from the source in file order, the rejected rows and the throughput
+     */
+    public record Result(List<Contact> contacts, List<Rejected> rejected, long rowsRead, long bytes, long nanos) {
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rowsRead * 1e9 / nanos;
+        }
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1024 * 1024);
+        }
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d imported, %d rejected in %.2f s (%.0f rows/s, %.1f MB/s)",
+                    rowsRead, contacts.size(), rejected.size(), nanos / 1e9, rowsPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    private record Chunk(List<Contact> contacts, List<Rejected> rejected) {
+    }
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final ContactValidator validator = new ContactValidator();
+
+    public BulkImporter(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+    /**
+     * Reads, normalises and validates every row of the source. Progress is reported on the calling thread
+     * after every chunk.
+     */
+    public Result read(Path source, char delimiter, Consumer<Progress> onProgress) throws IOException {
+        long startTime = System.nanoTime();
+        ContactMetrics.Sample sample = ContactMetrics.importing.start();
+        List<Contact> contacts = new ArrayList<>();
+        List<Rejected> rejected = new ArrayList<>();
+        Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        int maxInFlight = pool.getParallelism() * 2;
+        long rowsRead = 0;
+        try (CsvReader reader = CsvReader.open(source, delimiter, false)) {
+            String[] first = reader.readRow();
+            int[] columns = first == null ? fileColumns : columns(first);
+            long rowNumber = 1;
+            List<String[]> rows = new ArrayList<>(chunkSize);
+            if (first != null && columns == fileColumns) {
+                rows.add(first); // no header, the first row is a contact
+            } else if (first != null) {
+                rowNumber = 2;
+            }
+            String[] row;
+            while (true) {
+                row = reader.readRow();
+                if (row != null) {
+                    rows.add(row);
+                }
+                if (rows.size() == chunkSize || (row == null && !rows.isEmpty())) {
+                    List<String[]> chunkRows = rows;
+                    long chunkStart = rowNumber;
+                    inFlight.add(pool.submit(() -> convert(chunkRows, chunkStart, columns)));
+                    rowNumber += rows.size();
+                    rowsRead += rows.size();
+                    rows = new ArrayList<>(chunkSize);
+                }
+                // keep the oldest chunks moving out, in order, so only a few are held at once
+                while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight || row == null)) {
+                    Chunk chunk = inFlight.poll().join();
+                    contacts.addAll(chunk.contacts());
+                    rejected.addAll(chunk.rejected());
+                    onProgress.accept(new Progress(rowsRead, contacts.size(), rejected.size(), System.nanoTime() - startTime));
+                }
+                if (row == null) {
+                    break;
+                }
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(true));
+        }
+        long bytes = Files.exists(source) ? Files.size(source) : 0;
+        sample.stop(rowsRead, bytes);
+        ContactMetrics.rowsRead.add(rowsRead);
+        ContactMetrics.bytesRead.add(bytes);
+        return new Result(contacts, rejected, rowsRead, bytes, System.nanoTime() - startTime);
+    }
+    /**
+     * Imports a file into a contacts file from the command line:
+     * BulkImporter source.csv [ListOfContacts.csv] [delimiter]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: BulkImporter <source> [contacts file] [delimiter]");
+            System.exit(2);
+        }
+        Path source = Path.of(args[0]);
+        Path target = Path.of(args.length > 1 ? args[1] : "src/main/java/luo/mathis/contactsapp/ListOfContacts.csv");
+        char delimiter = args.length > 2 ? args[2].charAt(0) : ContactCsv.delimiter;
+        try (FileContactRepository repository = FileContactRepository.open(target)) {
+            BulkImporter importer = new BulkImporter(ForkJoinPool.commonPool(), 10000);
+            Result result = importer.read(source, delimiter, progress ->
+                    System.out.printf("\r%d rows, %.0f rows/s", progress.rowsRead(), progress.rowsPerSecond()));
+            System.out.println();
+            for (Rejected rejected : result.rejected().subList(0, Math.min(20, result.rejected().size()))) {
+                System.out.println("Row " + rejected.row() + ": " + rejected.message().replace("\n", " ").trim());
+            }
+            // journalled next to the contacts file like an import in the app, the app picks it up on its next start
+            repository.addAll(result.contacts());
+            System.out.println(result);
+            System.out.println(repository.size() + " contacts in " + target);
+        }
+    }
+    /**
+     * Maps, normalises and validates one chunk (runs on the pool)
+     */
+    private Chunk convert(List<String[]> rows, long firstRow, int[] columns) {
+        List<Contact> contacts = new ArrayList<>(rows.size());
+        List<Rejected> rejected = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Contact contact = toContact(rows.get(i), columns);
+            if (contact == null) {
+                rejected.add(new Rejected(firstRow + i, "Empty row"));
+                continue;
+            }
+            ContactValidator.Result result = validator.validate(contact);
+            if (result.isValid()) {
+                contacts.add(contact);
+            } else {
+                rejected.add(new Rejected(firstRow + i, result.errorMessage()));
+            }
+        }
+        return new Chunk(contacts, rejected);
+    }
+    /**
+     * Returns the role of every column if the row is a header, or the app's column order if it is not
+     */
+    private static int[] columns(String[] row) {
+        int[] columns = new int[row.length];
+        boolean header = false;
+        for (int i = 0; i < row.length; i++) {
+            Integer role = headerNames.get(headerKey(row[i]));
+            columns[i] = role == null ? ignored : role;
+            header |= role != null;
+        }
+        return header ? columns : fileColumns;
+    }
+    private static String headerKey(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (Character.isLetter(c)) {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+    /**
+     * Creates a normalised contact from a row, or returns null if the row has no values at all
+     */
+    private static Contact toContact(String[] row, int[] columns) {
+        String[] values = new String[ContactField.values().length];
+        String first = null;
+        String last = null;
+        boolean empty = true;
+        for (int i = 0; i < row.length && i < columns.length; i++) {
+            String value = row[i].trim();
+            if (value.isEmpty() || columns[i] == ignored) {
+                continue;
+            }
+            empty = false;
+            switch (columns[i]) {
+                case firstName -> first = value;
+                case lastName -> last = value;
+                default -> {
+                    int field = columns[i];
+                    // several phone columns are kept as several numbers
+                    values[field] = values[field] == null || field != ContactField.PHONE_NUMBERS.ordinal()
+                            ? value : values[field] + ";" + value;
+                }
+            }
+        }
+        if (empty) {
+            return null;
+        }
+        if (values[ContactField.NAME.ordinal()] == null && (first != null || last != null)) {
+            values[ContactField.NAME.ordinal()] = first == null ? last : last == null ? first : first + " " + last;
+        }
+        return new Contact(
+                orPlaceholder(collapseSpaces(values[ContactField.NAME.ordinal()])),
+                orPlaceholder(normalisePhoneNumbers(values[ContactField.PHONE_NUMBERS.ordinal()])),
+                orPlaceholder(normaliseEmail(values[ContactField.EMAIL.ordinal()])),
+                orPlaceholder(collapseSpaces(values[ContactField.ADDRESS.ordinal()])),
+                orPlaceholder(normaliseBirthday(values[ContactField.BIRTHDAY.ordinal()])));
+    }
+    private static String orPlaceholder(String value) {
+        return value == null || value.isEmpty() ? notFilledIn : value;
+    }
+    private static String collapseSpaces(String value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder collapsed = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && collapsed.length() > 0) {
+                    collapsed.append(' ');
+                }
+                space = false;
+                collapsed.append(c);
+            }
+        }
+        return collapsed.toString();
+    }
+    /**
+     * Lower-cases the domain (the part after the @), which is not case-sensitive
+     */
+    static String normaliseEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 ? email : email.substring(0, at + 1) + email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+    /**
+     * Brings numbers like (555) 555.1234 or +1 555 555 1234 into the ###-###-#### format. If any number is not
+     * a US or CA one, all of them are written as plain digits (the app does not allow mixing the two). Numbers
+     * may be separated by ; , / or |. Anything with letters is left alone.
+     */
+    static String normalisePhoneNumbers(String phoneNumbers) {
+        if (phoneNumbers == null) {
+            return null;
+        }
+        List<String> numbers = new ArrayList<>(2);
+        StringBuilder digits = new StringBuilder(16);
+        boolean allNorthAmerican = true;
+        for (int i = 0; i <= phoneNumbers.length(); i++) {
+            char c = i < phoneNumbers.length() ? phoneNumbers.charAt(i) : ';';
+            if (c == ';' || c == ',' || c == '/' || c == '|') {
+                if (digits.length() > 0) {
+                    // a US or CA number, possibly with its country code
+                    boolean countryCode = digits.length() == 11 && digits.charAt(0) == '1';
+                    allNorthAmerican &= digits.length() == 10 || countryCode;
+                    numbers.add(countryCode ? digits.substring(1) : digits.toString());
+                    digits.setLength(0);
+                }
+            } else if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (Character.isLetter(c)) {
+                return phoneNumbers; // not a number, let validation report it
+            }
+        }
+        StringBuilder normalised = new StringBuilder(phoneNumbers.length());
+        for (String number : numbers) {
+            if (normalised.length() > 0) {
+                normalised.append(';');
+            }
+            if (allNorthAmerican) {
+                normalised.append(number, 0, 3).append('-').append(number, 3, 6).append('-').append(number, 6, 10);
+            } else {
+                normalised.append(number);
+            }
+        }
+        return normalised.toString();
+    }
+    /**
+     * Brings D/M/YYYY, DD-MM-YYYY, DD.MM.YYYY and YYYY-MM-DD dates into the DD/MM/YYYY format. Anything else
+     * is left alone for validation to report.
+     */
+    static String normaliseBirthday(String birthday) {
+        if (birthday == null) {
+            return null;
+        }
+        String[] parts = dateSeparators.split(birthday, -1);
+        if (parts.length != 3) {
+            return birthday;
+        }
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 4 || !part.chars().allMatch(Character::isDigit)) {
+                return birthday;
+            }
+        }
+        if (parts[0].length() == 4 && parts[1].length() <= 2 && parts[2].length() <= 2) {
+            return pad(parts[2]) + "/" + pad(parts[1]) + "/" + parts[0];
+        }
+        if (parts[0].length() <= 2 && parts[1].length() <= 2 && parts[2].length() == 4) {
+            return pad(parts[0]) + "/" + pad(parts[1]) + "/" + parts[2];
+        }
+        return birthday;
+    }
+    private static String pad(String number) {
+        return number.length() == 1 ? "0" + number : number;
+    }
+}
@@ -1,20 +1,75 @@
 package luo.mathis.contactsapp;
 
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.StringBinding;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.time.LocalDate;
+
+/**
+ * A contact. Fields are plain strings, and the table's properties are created from them the first time it
+ * asks and then kept, so rendering a row again reuses them instead of allocating new ones. The plain fields
+ * stay the values the getters return, so any thread can read a contact. The birthday and phone numbers are
+ * also kept parsed, as an epoch day and normalised numbers, so nothing has to parse the text again to compare
+ * or look them up.
+ * <p>
+ * Every contact in a store has a unique id that stays the same across edits and restarts (0 until the store
+ * assigns one). Contacts in a ContactStore are never changed: an edit replaces the contact with a changed copy(). Only
+ * change contacts that no other thread can see yet.
+ */
 public class Contact {
-    // contacts have a name, phoneNumbers, email, address, and birthday
+    // contacts have an id, name, phoneNumbers, email, address, and birthday
+    private long id;
     private String name;
     private String phoneNumbers;
     private String email;
     private String address;
     private String birthday;
+    // the birthday parsed once when it is set, ContactValidator.noDate if it is not a valid date
+    private int birthdayEpochDay;
+    // the valid phone numbers normalised when they are set (see PhoneNumbers)
+    private long[] phones;
+    // created the first time a cell shows the field, and kept in step by the setters
+    private StringProperty nameProperty;
+    private StringProperty phoneNumbersProperty;
+    private StringProperty emailProperty;
+    private StringProperty addressProperty;
+    private StringProperty birthdayProperty;
+    private StringBinding phoneNumbersDisplay;
+    // the keys the table sorts by, by field, computed when first sorted by (see ContactSortKeys)
+    private Comparable<?>[] sortKeys;
 
-    // constructor
+    // constructor, the store assigns the id
     public Contact(String name, String phoneNumbers, String email, String address, String birthday) {
+        this(0, name, phoneNumbers, email, address, birthday);
+    }
+
+    public Contact(long id, String name, String phoneNumbers, String email, String address, String birthday) {
+        this.id = id;
         this.name = name;
         this.phoneNumbers = phoneNumbers;
         this.email = email;
         this.address = address;
         this.birthday = birthday;
+        this.birthdayEpochDay = ContactValidator.epochDay(birthday);
+        this.phones = PhoneNumbers.parse(phoneNumbers);
+    }
+
+    /**
+     * Returns a new contact with the same id and values (and no properties yet)
+     */
+    public Contact copy() {
+        return new Contact(id, name, phoneNumbers, email, address, birthday);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // only the store sets ids, before the contact is added
+    void setId(long id) {
+        this.id = id;
     }
 
     public String getName() {
@@ -23,6 +78,17 @@ public class Contact {
 
     public void setName(String name) {
         this.name = name;
+        sortKeys = null;
+        if (nameProperty != null) {
+            nameProperty.set(name);
+        }
+    }
+
+    public StringProperty nameProperty() {
+        if (nameProperty == null) {
+            nameProperty = new SimpleStringProperty(this, "name", name);
+        }
+        return nameProperty;
     }
 
     public String getEmail() {
@@ -31,6 +97,17 @@ public class Contact {
 
     public void setEmail(String email) {
         this.email = email;
+        sortKeys = null;
+        if (emailProperty != null) {
+            emailProperty.set(email);
+        }
+    }
+
+    public StringProperty emailProperty() {
+        if (emailProperty == null) {
+            emailProperty = new SimpleStringProperty(this, "email", email);
+        }
+        return emailProperty;
     }
 
     public String getAddress() {
@@ -39,6 +116,17 @@ public class Contact {
 
     public void setAddress(String address) {
         this.address = address;
+        sortKeys = null;
+        if (addressProperty != null) {
+            addressProperty.set(address);
+        }
+    }
+
+    public StringProperty addressProperty() {
+        if (addressProperty == null) {
+            addressProperty = new SimpleStringProperty(this, "address", address);
+        }
+        return addressProperty;
     }
 
     public String getBirthday() {
@@ -47,6 +135,32 @@ public class Contact {
 
     public void setBirthday(String birthday) {
         this.birthday = birthday;
+        birthdayEpochDay = ContactValidator.epochDay(birthday);
+        sortKeys = null;
+        if (birthdayProperty != null) {
+            birthdayProperty.set(birthday);
+        }
+    }
+
+    /**
+     * Returns the birthday as an epoch day, or ContactValidator.noDate if it is not filled in or not a valid date
+     */
+    public int getBirthdayEpochDay() {
+        return birthdayEpochDay;
+    }
+
+    /**
+     * Returns the birthday as a date, or null if it is not filled in or not a valid date
+     */
+    public LocalDate getBirthdayDate() {
+        return birthdayEpochDay == ContactValidator.noDate ? null : LocalDate.ofEpochDay(birthdayEpochDay);
+    }
+
+    public StringProperty birthdayProperty() {
+        if (birthdayProperty == null) {
+            birthdayProperty = new SimpleStringProperty(this, "birthday", birthday);
+        }
+        return birthdayProperty;
     }
 
     public String getPhoneNumbers() {
@@ -55,6 +169,57 @@ public class Contact {
 
     public void setPhoneNumbers(String phoneNumbers) {
         this.phoneNumbers = phoneNumbers;
+        phones = PhoneNumbers.parse(phoneNumbers);
+        sortKeys = null;
+        if (phoneNumbersProperty != null) {
+            phoneNumbersProperty.set(phoneNumbers);
+        }
+    }
+
+    /**
+     * Returns the valid phone numbers, normalised (see PhoneNumbers), in the order they are listed
+     */
+    public long[] getPhones() {
+        return phones.clone();
+    }
+
+    // the normalised phone numbers without a copy, for the indexes (never change the array)
+    long[] phones() {
+        return phones;
+    }
+
+    public StringProperty phoneNumbersProperty() {
+        if (phoneNumbersProperty == null) {
+            phoneNumbersProperty = new SimpleStringProperty(this, "phoneNumbers", phoneNumbers);
+        }
+        return phoneNumbersProperty;
+    }
+
+    /**
+     * Returns the cache of sort keys by field ordinal, cleared whenever a field changes
+     */
+    Comparable<?>[] sortKeys() {
+        Comparable<?>[] keys = sortKeys;
+        if (keys == null) {
+            keys = new Comparable<?>[ContactField.values().length];
+            sortKeys = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * The phone numbers as the table shows them (separated by commas instead of semicolons). The text is
+     * only rebuilt after the phone numbers change.
+     */
+    public StringBinding phoneNumbersDisplayProperty() {
+        if (phoneNumbersDisplay == null) {
+            StringProperty phones = phoneNumbersProperty();
+            phoneNumbersDisplay = Bindings.createStringBinding(() -> {
+                String value = phones.get();
+                return value == null ? null : value.replace(";", ",");
+            }, phones);
+        }
+        return phoneNumbersDisplay;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package luo.mathis.contactsapp;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Column-oriented contact storage for address books too big to keep as one object per field. Names, emails
+ * and addresses live as UTF-8 in one byte arena per field, birthdays as an epoch day int, phone numbers
+ * packed into longs, and the "Not Filled In" placeholder as a single bit. Values that do not fit a packed
+ * form (an invalid birthday, a phone number with letters) go into a shared dictionary, so repeated ones
+ * are stored once.
+ * <p>
+ * get(row) creates a Contact (with the row's id) for one row on demand, so only the rows being looked at exist
+ * as objects. PagedContactList keeps its cached pages this way. Only paged mode uses it: the editable list of
+ * the app (ContactStore) still holds one Contact per row, so this does not lower the heap of a loaded
+ * address book, only of the pages read-only browsing keeps.
+ * <p>
+ * Phone numbers are packed by PhoneNumbers.pack, the same form the binary snapshot stores.
+ */
+public class ContactColumns {
+    private static final String notFilledIn = "Not Filled In";
+    // birthdays below this are dictionary codes instead of epoch days
+    private static final int rawBirthday = Integer.MIN_VALUE;
+    private static final int rawBirthdayLimit = Integer.MIN_VALUE + (1 << 30);
+    // phone longs are PhoneNumbers.pack values, or a dictionary code with bit 63 set
+    private static final long rawPhone = 1L << 63;
+
+    private final TextColumn names = new TextColumn();
+    private final TextColumn emails = new TextColumn();
+    private final TextColumn addresses = new TextColumn();
+    private long[] ids;
+    private int[] birthdays;
+    private int[] phoneStarts;
+    private long[] phones;
+    private int phoneCount = 0;
+    private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private int size = 0;
+
+    public ContactColumns() {
+        this(16);
+    }
+    /**
+     * Creates the columns with room for the given number of rows before they have to grow
+     */
+    public ContactColumns(int rows) {
+        int capacity = Math.max(1, rows);
+        ids = new long[capacity];
+        birthdays = new int[capacity];
+        phoneStarts = new int[capacity + 1];
+        phones = new long[capacity];
+    }
+    /**
+     * Appends a contact as a new row
+     */
+    public void add(Contact contact) {
+        if (size == birthdays.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            birthdays = Arrays.copyOf(birthdays, size * 2);
+            phoneStarts = Arrays.copyOf(phoneStarts, size * 2 + 1);
+        }
+        ids[size] = contact.getId();
+        names.add(contact.getName());
+        emails.add(contact.getEmail());
+        addresses.add(contact.getAddress());
+        birthdays[size] = packBirthday(contact.getBirthday());
+        packPhones(contact.getPhoneNumbers());
+        size++;
+        phoneStarts[size] = phoneCount;
+    }
+    public void addAll(Iterable<Contact> contacts) {
+        for (Contact contact : contacts) {
+            add(contact);
+        }
+    }
+    public int size() {
+        return size;
+    }
+    /**
+     * Creates a contact holding the values of the given row
+     */
+    public Contact get(int row) {
+        return new Contact(getId(row), getName(row), getPhoneNumbers(row), getEmail(row), getAddress(row),
+                getBirthday(row));
+    }
+    public long getId(int row) {
+        return ids[checked(row)];
+    }
+    public String getName(int row) {
+        return names.get(checked(row));
+    }
+    public String getEmail(int row) {
+        return emails.get(checked(row));
+    }
+    public String getAddress(int row) {
+        return addresses.get(checked(row));
+    }
+    /**
+     * Returns the birthday of a row as an epoch day, or Integer.MIN_VALUE if it is not a valid date
+     */
+    public int getBirthdayEpochDay(int row) {
+        int value = birthdays[checked(row)];
+        return value < rawBirthdayLimit ? Integer.MIN_VALUE : value;
+    }
+    public String getBirthday(int row) {
+        int value = birthdays[checked(row)];
+        if (value < rawBirthdayLimit) {
+            return dictionary.get(value - rawBirthday);
+        }
+        LocalDate date = LocalDate.ofEpochDay(value);
+        char[] text = new char[10];
+        digits(text, 0, 2, date.getDayOfMonth());
+        text[2] = '/';
+        digits(text, 3, 2, date.getMonthValue());
+        text[5] = '/';
+        digits(text, 6, 4, date.getYear());
+        return new String(text);
+    }
+    public String getPhoneNumbers(int row) {
+        int start = phoneStarts[checked(row)];
+        int end = phoneStarts[row + 1];
+        if (end - start == 1 && (phones[start] & rawPhone) != 0) {
+            return dictionary.get((int) (phones[start] & ~rawPhone));
+        }
+        StringBuilder text = new StringBuilder((end - start) * 13);
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                text.append(';');
+            }
+            PhoneNumbers.unpack(phones[i], text);
+        }
+        return text.toString();
+    }
+    /**
+     * Returns the number of bytes held by the columns (arrays and dictionary strings)
+     */
+    public long footprint() {
+        long bytes = names.footprint() + emails.footprint() + addresses.footprint();
+        bytes += array(ids.length * 8L) + array(birthdays.length * 4L) + array(phoneStarts.length * 4L)
+                + array(phones.length * 8L);
+        for (String value : dictionary) {
+            bytes += string(value) + 32; // plus the map entry pointing at it
+        }
+        return bytes;
+    }
+    /**
+     * Estimates the heap used by the given contacts as one object per contact and per distinct String
+     * (compressed oops, compact strings), for comparing against footprint()
+     */
+    public static long estimateObjectFootprint(List<Contact> contacts) {
+        Set<String> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = array(contacts.size() * 4L); // the list's backing array
+        for (Contact contact : contacts) {
+            // header, id, field references, epoch day, and the parsed phones, no properties created yet
+            bytes += 80 + array(contact.phones().length * 8L);
+            for (ContactField field : ContactField.values()) {
+                String value = field.get(contact);
+                if (value != null && seen.add(value)) {
+                    bytes += string(value);
+                }
+            }
+        }
+        return bytes;
+    }
+    private int checked(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return row;
+    }
+    private int packBirthday(String birthday) {
+        // DD/MM/YYYY becomes an epoch day, anything else a dictionary code
+        int epochDay = ContactValidator.epochDay(birthday);
+        return epochDay != ContactValidator.noDate ? epochDay : rawBirthday + code(birthday);
+    }
+    private void packPhones(String phoneNumbers) {
+        int start = phoneCount;
+        int from = 0;
+        while (phoneNumbers != null && !phoneNumbers.isEmpty()) {
+            int end = phoneNumbers.indexOf(';', from);
+            if (end < 0) {
+                end = phoneNumbers.length();
+            }
+            long packed = PhoneNumbers.pack(phoneNumbers, from, end);
+            if (packed == PhoneNumbers.invalid) {
+                break;
+            }
+            addPhone(packed);
+            if (end == phoneNumbers.length()) {
+                return;
+            }
+            from = end + 1;
+        }
+        // the placeholder, an empty value or something that is not a list of numbers is kept as text
+        phoneCount = start;
+        addPhone(rawPhone | code(phoneNumbers));
+    }
+    private void addPhone(long packed) {
+        if (phoneCount == phones.length) {
+            phones = Arrays.copyOf(phones, phoneCount * 2);
+        }
+        phones[phoneCount++] = packed;
+    }
+    private int code(String value) {
+        String key = value == null ? "" : value;
+        Integer code = dictionaryCodes.get(key);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(key);
+            dictionaryCodes.put(key, code);
+        }
+        return code;
+    }
+    private static void digits(char[] text, int start, int length, long value) {
+        for (int i = start + length - 1; i >= start; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+    private static long array(long payload) {
+        return align(16 + payload);
+    }
+    private static long string(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        return 24 + array((long) value.length() * (latin1 ? 1 : 2));
+    }
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * One text field of every row as UTF-8 in a single byte array, plus a bit for the placeholder
+     */
+    private static final class TextColumn {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private int[] offsets = new int[17];
+        private int rows = 0;
+        private final BitSet placeholders = new BitSet();
+
+        void add(String value) {
+            if (rows + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            if (notFilledIn.equals(value) || value == null) {
+                placeholders.set(rows);
+            } else {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                if (length + encoded.length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(length + encoded.length, bytes.length * 2));
+                }
+                System.arraycopy(encoded, 0, bytes, length, encoded.length);
+                length += encoded.length;
+            }
+            rows++;
+            offsets[rows] = length;
+        }
+        String get(int row) {
+            if (placeholders.get(row)) {
+                return notFilledIn;
+            }
+            return new String(bytes, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+        }
+        long footprint() {
+            return array(bytes.length) + array(offsets.length * 4L) + placeholders.size() / 8;
+        }
+    }
+}
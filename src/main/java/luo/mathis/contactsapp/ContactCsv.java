@@ -0,0 +1,91 @@
+package luo.mathis.contactsapp;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Converts contacts to and from the rows of ListOfContacts.csv (name, email, address, birthday, phone numbers,
+ * id). The file is RFC 4180 CSV, so values may contain commas, quotes and line breaks. Rows written before
+ * contacts had ids have only the first five columns, their contacts get an id when they are loaded.
+ */
+public final class ContactCsv {
+    public static final char delimiter = ',';
+    private static final int writeBufferSize = 1024 * 1024;
+
+    private ContactCsv() {
+    }
+    /**
+     * Returns the row for a contact in file column order
+     */
+    public static String[] toRow(Contact contact) {
+        // use semicolon as separator for phone numbers
+        return new String[]{contact.getName(), contact.getEmail(), contact.getAddress(), contact.getBirthday(),
+                contact.getPhoneNumbers().replace(',', ';'), String.valueOf(contact.getId())};
+    }
+    /**
+     * Creates a contact from a row in file column order, or returns null if the row is too short
+     */
+    public static Contact fromRow(String[] data) {
+        if (data.length < 5) {
+            return null;
+        }
+        String name = data[0].trim();
+        String email = data[1].trim();
+        String address = data[2].trim();
+        String birthday = data[3].trim();
+        String phoneNumbers = data[4].trim();
+        long id = data.length > 5 ? parseId(data[5]) : 0;
+        return new Contact(id, name, phoneNumbers, email, address, birthday);
+    }
+    /**
+     * Returns the id in a row's id column, or 0 (no id yet) if it is not a positive number
+     */
+    public static long parseId(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    /**
+     * Joins a row into a single line of the file, quoting the values that need it
+     */
+    public static String formatRow(String[] row) {
+        return CsvWriter.format(row, delimiter);
+    }
+    /**
+     * Parses a single line of the file, or returns null if it is not a contact
+     */
+    public static Contact parseLine(String line) {
+        return fromRow(CsvReader.parse(line, delimiter));
+    }
+    /**
+     * Writes the rows as the whole file (overwriting it) and forces it to disk. Returns the CRC32 of the
+     * bytes written. Use SnapshotFormat.save to replace a file safely.
+     */
+    public static long write(Path path, List<String[]> rows) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the rows go out to the channel in a few large writes rather than many small ones
+            CsvWriter out = new CsvWriter(new OutputStreamWriter(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), writeBufferSize), crc),
+                    StandardCharsets.UTF_8), delimiter);
+            for (String[] row : rows) {
+                out.writeRow(row);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        return crc.getValue();
+    }
+}
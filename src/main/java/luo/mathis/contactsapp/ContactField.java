@@ -0,0 +1,33 @@
+package luo.mathis.contactsapp;
+
+/**
+ * The editable fields of a contact, used to describe a single field change
+ */
+public enum ContactField {
+    NAME, PHONE_NUMBERS, EMAIL, ADDRESS, BIRTHDAY;
+
+    /**
+     * Returns the value of this field for the given contact
+     */
+    public String get(Contact contact) {
+        return switch (this) {
+            case NAME -> contact.getName();
+            case PHONE_NUMBERS -> contact.getPhoneNumbers();
+            case EMAIL -> contact.getEmail();
+            case ADDRESS -> contact.getAddress();
+            case BIRTHDAY -> contact.getBirthday();
+        };
+    }
+    /**
+     * Sets the value of this field on the given contact
+     */
+    public void set(Contact contact, String value) {
+        switch (this) {
+            case NAME -> contact.setName(value);
+            case PHONE_NUMBERS -> contact.setPhoneNumbers(value);
+            case EMAIL -> contact.setEmail(value);
+            case ADDRESS -> contact.setAddress(value);
+            case BIRTHDAY -> contact.setBirthday(value);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package luo.mathis.contactsapp;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change log kept next to the contacts file. Adds, edits and deletes are written as one small
+ * record each, edits and deletes naming the contact by id, and the log is periodically compacted into a
+ * fresh snapshot on a background thread. Records are buffered until flush(), so a burst of changes costs a
+ * single write and a single force to the disk. Logs written before contacts had ids name them by position,
+ * those records still replay.
+ * <p>
+ * The first line of the log names the snapshot it applies to (by checksum). While compacting, a checkpoint
+ * record is written before the new snapshot replaces the old one, so a crash at any point still replays to
+ * the same list. A log that belongs to neither snapshot is moved aside, not dropped.
+ */
+public class ContactJournal implements Closeable, Flushable {
+
+    /**
+     * Where replayed records are applied
+     */
+    public interface Target {
+        void add(Contact contact);
+        void update(long id, ContactField field, String value);
+        void remove(long id);
+        void updateAt(int index, ContactField field, String value);
+        void removeAt(int index);
+    }
+
+    private static final String headerTag = "#snapshot";
+    private static final String addTag = "A";
+    private static final String editTag = "E";
+    private static final String removeTag = "R";
+    // records by position, written before contacts had ids
+    private static final String updateTag = "U";
+    private static final String deleteTag = "D";
+    private static final String checkpointTag = "C";
+
+    private final Path snapshotPath;
+    private final SnapshotFormat format;
+    private final Path journalPath;
+    private final int compactEvery;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // records written since the current snapshot, in order
+    private List<String> records = new ArrayList<>();
+    private FileChannel channel;
+    private BufferedWriter out;
+    private boolean compacting = false;
+
+    public ContactJournal(Path snapshotPath, int compactEvery) {
+        this.snapshotPath = snapshotPath;
+        this.format = SnapshotFormat.of(snapshotPath);
+        this.journalPath = journalPath(snapshotPath);
+        this.compactEvery = compactEvery;
+    }
+    /**
+     * Returns where the log of the given contacts file is kept
+     */
+    public static Path journalPath(Path snapshotPath) {
+        return snapshotPath.resolveSibling(snapshotPath.getFileName() + ".journal");
+    }
+    /**
+     * Replays the log onto the contacts loaded from the snapshot and opens it for appending
+     */
+    public void open(ContactStore store) throws IOException {
+        store.replay(recover(format.checksum(snapshotPath)));
+    }
+    /**
+     * Opens the log for appending and returns the records that still have to be replayed onto the snapshot
+     * with the given checksum. Can run on a background thread, nothing may be logged until replay() is done.
+     */
+    public synchronized List<String> recover(long snapshotChecksum) throws IOException {
+        List<String> replay = readReplayableRecords(snapshotChecksum);
+        if (replay == null) {
+            // edits made to some other version of the file, keep them for whoever wants to look at them
+            Path aside = journalPath.resolveSibling(journalPath.getFileName() + ".unmatched-" + System.currentTimeMillis());
+            move(journalPath, aside);
+            ContactMetrics.failed("recover " + journalPath.getFileName(),
+                    "it does not belong to the current contacts file, moved it to " + aside.getFileName());
+            replay = new ArrayList<>();
+        }
+        // start the log again from the records that still apply, dropping stale or partial ones
+        rewrite(snapshotChecksum, replay);
+        records = new ArrayList<>(replay);
+        openForAppend();
+        return replay;
+    }
+    /**
+     * Applies recovered records to the contacts loaded from the snapshot, in order
+     */
+    public static void replay(List<String> recovered, Target target) {
+        for (String record : recovered) {
+            apply(record, target);
+        }
+    }
+    /**
+     * Returns how many records have been written since the last snapshot
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+    /**
+     * Returns how many records may pile up before the log should be compacted
+     */
+    public int getCompactEvery() {
+        return compactEvery;
+    }
+    /**
+     * Records a contact added to the end of the list
+     */
+    public synchronized void logAdd(Contact contact) throws IOException {
+        String[] row = ContactCsv.toRow(contact);
+        String[] parts = new String[row.length + 1];
+        parts[0] = addTag;
+        System.arraycopy(row, 0, parts, 1, row.length);
+        append(encode(parts));
+    }
+    /**
+     * Records contacts added to the end of the list in one go (one lock, one buffered write)
+     */
+    public synchronized void logAddAll(List<Contact> contacts) throws IOException {
+        for (Contact contact : contacts) {
+            logAdd(contact);
+        }
+    }
+    /**
+     * Records a change to one field of the contact with the given id
+     */
+    public synchronized void logUpdate(long id, ContactField field, String value) throws IOException {
+        append(encode(editTag, String.valueOf(id), field.name(), value));
+    }
+    /**
+     * Records the removal of the contact with the given id
+     */
+    public synchronized void logDelete(long id) throws IOException {
+        append(encode(removeTag, String.valueOf(id)));
+    }
+    /**
+     * Starts writing the given rows as the new snapshot on a background thread. The rows must be the state of
+     * the list right after the last record logged so far (the writer thread guarantees this by running both
+     * in submission order). Does nothing while a compaction is still running.
+     */
+    public synchronized void compact(List<String[]> rows) {
+        if (compacting) {
+            return;
+        }
+        compacting = true;
+        int upTo = records.size();
+        compactor.execute(() -> compact(rows, upTo));
+    }
+    /**
+     * Writes buffered records to the file and forces them to the disk
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+            channel.force(false);
+        }
+    }
+    /**
+     * Flushes and closes the log, waiting for a running compaction to finish
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (out != null) {
+                flush();
+                out.close();
+                out = null;
+                channel = null;
+            }
+        }
+    }
+    /**
+     * Writes the given rows as the new snapshot and drops the records it contains from the log
+     */
+    private void compact(List<String[]> rows, int upTo) {
+        Path tmp = SnapshotFormat.temporaryPath(snapshotPath);
+        ContactMetrics.Sample sample = ContactMetrics.compaction.start();
+        try {
+            long newChecksum;
+            long bytes;
+            try {
+                newChecksum = format.write(tmp, rows);
+                bytes = Files.size(tmp);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            synchronized (this) {
+                // mark which records the new snapshot already contains before it replaces the old one
+                append(encode(checkpointTag, Long.toHexString(newChecksum), String.valueOf(upTo)), false);
+                flush();
+                // forced, backed up and renamed like SnapshotFormat.save
+                SnapshotFormat.replace(tmp, snapshotPath);
+                List<String> tail = new ArrayList<>(records.subList(upTo, records.size()));
+                out.close();
+                rewrite(newChecksum, tail);
+                records = tail;
+                openForAppend();
+            }
+            sample.stop(rows.size(), bytes);
+            ContactMetrics.rowsWritten.add(rows.size());
+            ContactMetrics.bytesWritten.add(bytes);
+        } catch (IOException e) {
+            ContactMetrics.failed("compact " + snapshotPath.getFileName(), e);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+    /**
+     * Returns the records that still have to be applied on top of the snapshot with the given checksum, or
+     * null if the log belongs to another snapshot
+     */
+    private List<String> readReplayableRecords(long snapshotChecksum) throws IOException {
+        List<String> replay = new ArrayList<>();
+        if (!Files.exists(journalPath)) {
+            return replay;
+        }
+        String text = Files.readString(journalPath, StandardCharsets.UTF_8);
+        // anything after the last line break is a record that was cut off mid-write
+        String[] lines = text.substring(0, text.lastIndexOf('\n') + 1).split("\n");
+        if (lines.length == 0 || lines.length == 1 && lines[0].isEmpty()) {
+            return replay;
+        }
+        if (!lines[0].startsWith(headerTag + "\t")) {
+            return null;
+        }
+        boolean matchesHeader = lines[0].equals(headerTag + "\t" + Long.toHexString(snapshotChecksum));
+        int skip = -1;
+        List<String> all = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith(checkpointTag + "\t")) {
+                String[] parts = decode(lines[i]);
+                // a compaction got as far as replacing the snapshot, only the records after it still apply
+                if (parts[1].equals(Long.toHexString(snapshotChecksum))) {
+                    skip = Integer.parseInt(parts[2]);
+                }
+            } else if (!lines[i].isEmpty()) {
+                all.add(lines[i]);
+            }
+        }
+        if (matchesHeader) {
+            replay.addAll(all);
+        } else if (skip >= 0) {
+            replay.addAll(all.subList(Math.min(skip, all.size()), all.size()));
+        } else {
+            return null;
+        }
+        return replay;
+    }
+    /**
+     * Applies a single record
+     */
+    private static void apply(String record, Target target) {
+        String[] parts = decode(record);
+        try {
+            switch (parts[0]) {
+                case addTag -> {
+                    String[] row = new String[parts.length - 1];
+                    System.arraycopy(parts, 1, row, 0, row.length);
+                    Contact contact = ContactCsv.fromRow(row);
+                    if (contact != null) {
+                        target.add(contact);
+                    }
+                }
+                case editTag -> target.update(Long.parseLong(parts[1]), ContactField.valueOf(parts[2]), parts[3]);
+                case removeTag -> target.remove(Long.parseLong(parts[1]));
+                case updateTag -> target.updateAt(Integer.parseInt(parts[1]), ContactField.valueOf(parts[2]), parts[3]);
+                case deleteTag -> target.removeAt(Integer.parseInt(parts[1]));
+                default -> ContactMetrics.failed("replay journal", "skipped unknown record " + record);
+            }
+        } catch (RuntimeException e) {
+            ContactMetrics.failed("replay journal", "skipped malformed record " + record + " (" + e + ")");
+        }
+    }
+    private void append(String record) throws IOException {
+        append(record, true);
+    }
+    private void append(String record, boolean keep) throws IOException {
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        out.write(record);
+        out.write('\n');
+        if (keep) {
+            records.add(record);
+        }
+    }
+    /**
+     * Replaces the log with a header for the given snapshot followed by the given records
+     */
+    private void rewrite(long snapshotChecksum, List<String> keep) throws IOException {
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedWriter bw = new BufferedWriter(Channels.newWriter(file, StandardCharsets.UTF_8))) {
+            bw.write(headerTag + "\t" + Long.toHexString(snapshotChecksum));
+            bw.write('\n');
+            for (String record : keep) {
+                bw.write(record);
+                bw.write('\n');
+            }
+            // on the disk before it replaces the old log
+            bw.flush();
+            file.force(false);
+        }
+        move(tmp, journalPath);
+        SnapshotFormat.syncDirectory(journalPath);
+    }
+    private void openForAppend() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+    /**
+     * Returns the CRC32 of a file, or 0 if it does not exist (same as an empty file)
+     */
+    static long checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+        return crc.getValue();
+    }
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    /**
+     * Joins the parts of a record with tabs, escaping tabs, line breaks and backslashes in the values
+     */
+    private static String encode(String... parts) {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                record.append('\t');
+            }
+            String part = parts[i];
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                switch (c) {
+                    case '\\' -> record.append("\\\\");
+                    case '\t' -> record.append("\\t");
+                    case '\n' -> record.append("\\n");
+                    case '\r' -> record.append("\\r");
+                    default -> record.append(c);
+                }
+            }
+        }
+        return record.toString();
+    }
+    private static String[] decode(String record) {
+        String[] parts = record.split("\t", -1);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.indexOf('\\') < 0) {
+                continue;
+            }
+            StringBuilder value = new StringBuilder(part.length());
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                if (c == '\\' && j + 1 < part.length()) {
+                    char next = part.charAt(++j);
+                    value.append(switch (next) {
+                        case 't' -> '\t';
+                        case 'n' -> '\n';
+                        case 'r' -> '\r';
+                        default -> next;
+                    });
+                } else {
+                    value.append(c);
+                }
+            }
+            parts[i] = value.toString();
+        }
+        return parts;
+    }
+}
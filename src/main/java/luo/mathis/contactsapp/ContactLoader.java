@@ -0,0 +1,49 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the contacts file (CSV or binary snapshot) in chunks so callers can publish rows while the rest of the
+ * file is still being parsed
+ */
+public class ContactLoader {
+    private final Path path;
+    private final int chunkSize;
+    private MappedCsvParser.Stats lastStats;
+
+    public ContactLoader(Path path, int chunkSize) {
+        this.path = path;
+        this.chunkSize = chunkSize;
+    }
+    /**
+     * Parses the file on the calling thread, handing over every chunkSize contacts as one list.
+     * Returns the checksum of the file (0 if it does not exist), which the journal uses to recognise its
+     * snapshot without reading the file a second time.
+     */
+    public long read(Consumer<List<Contact>> onChunk) throws IOException {
+        List<List<Contact>> chunk = new ArrayList<>(1);
+        chunk.add(new ArrayList<>(chunkSize));
+        lastStats = SnapshotFormat.of(path).read(path, contact -> {
+            List<Contact> current = chunk.get(0);
+            current.add(contact);
+            if (current.size() == chunkSize) {
+                onChunk.accept(current);
+                chunk.set(0, new ArrayList<>(chunkSize));
+            }
+        });
+        if (!chunk.get(0).isEmpty()) {
+            onChunk.accept(chunk.get(0));
+        }
+        return lastStats.checksum();
+    }
+    /**
+     * Returns the throughput of the last read, or null before the first one
+     */
+    public MappedCsvParser.Stats getLastStats() {
+        return lastStats;
+    }
+}
@@ -0,0 +1,355 @@
+package luo.mathis.contactsapp;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for the persistence and table hot paths, for the life of the process. Updating them is
+ * cheap enough for every call from any thread (adders and a histogram of power-of-two buckets). They are
+ * published as the luo.mathis.contactsapp:type=ContactMetrics MXBean (JConsole, VisualVM) once register() is
+ * called, and every timed operation and error is also a JFR event, so a recording shows them next to GC and
+ * file I/O.
+ */
+public final class ContactMetrics {
+    public static final String objectName = "luo.mathis.contactsapp:type=ContactMetrics";
+    private static final System.Logger logger = System.getLogger(ContactMetrics.class.getName());
+
+    // reading the file (or a page of it in paged mode, or a file to import), rewriting it, and the journal
+    public static final Timer load = new Timer("load", true);
+    public static final Timer pageLoad = new Timer("pageLoad", true);
+    public static final Timer importing = new Timer("import", true);
+    public static final Timer save = new Timer("save", true);
+    public static final Timer writeBatch = new Timer("writeBatch", true);
+    public static final Timer compaction = new Timer("compaction", true);
+    // applying a batch of changes to the list the table shows, and sorting it again
+    public static final Timer publish = new Timer("publish", true);
+    public static final Timer sort = new Timer("sort", true);
+    // single validations are too short and too many for an event each
+    public static final Timer validate = new Timer("validate", false);
+    public static final Timer validateAll = new Timer("validateAll", true);
+    // from an edit being committed to the first layout pulse after the table got the change
+    public static final Timer editToVisible = new Timer("editToVisible", true);
+    public static final LongAdder rowsRead = new LongAdder();
+    public static final LongAdder rowsWritten = new LongAdder();
+    public static final LongAdder bytesRead = new LongAdder();
+    public static final LongAdder bytesWritten = new LongAdder();
+    public static final LongAdder errors = new LongAdder();
+    private static final Timer[] timers = {load, pageLoad, importing, save, writeBatch, compaction, publish, sort, validate,
+            validateAll, editToVisible};
+    private static volatile String lastError = "";
+    private static boolean registered = false;
+
+    /**
+     * What a timer has measured so far, in milliseconds. The percentiles are the upper bounds of their
+     * histogram buckets, so they are at most twice the real value.
+     */
+    public record TimerStats(long count, double totalMillis, double meanMillis, double maxMillis, double p50Millis,
+                             double p99Millis) {
+        @Override
+        public String toString() {
+            return String.format("%d, mean %.3f ms, p50 < %.3f ms, p99 < %.3f ms, max %.3f ms",
+                    count, meanMillis, p50Millis, p99Millis, maxMillis);
+        }
+    }
+
+    /**
+     * Durations of one operation: count, total, maximum and a histogram with a bucket per power of two
+     * microseconds
+     */
+    public static final class Timer {
+        private static final int buckets = 40;
+
+        private final String name;
+        private final boolean events;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(buckets);
+
+        private Timer(String name, boolean events) {
+            this.name = name;
+            this.events = events;
+        }
+        public String getName() {
+            return name;
+        }
+        /**
+         * Starts timing one run of the operation (and its JFR event), which stop() records
+         */
+        public Sample start() {
+            OperationEvent event = null;
+            if (events) {
+                event = new OperationEvent();
+                event.begin();
+            }
+            return new Sample(this, event, System.nanoTime());
+        }
+        /**
+         * Records a run of the given duration that was timed elsewhere
+         */
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long micros = nanos / 1000;
+            int bucket = micros <= 0 ? 0 : Math.min(buckets - 1, 64 - Long.numberOfLeadingZeros(micros));
+            histogram.incrementAndGet(bucket);
+        }
+        public TimerStats getStats() {
+            long runs = count.sum();
+            long total = totalNanos.sum();
+            return new TimerStats(runs, total / 1e6, runs == 0 ? 0 : total / 1e6 / runs, maxNanos.get() / 1e6,
+                    percentile(runs, 0.5), percentile(runs, 0.99));
+        }
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (int i = 0; i < buckets; i++) {
+                histogram.set(i, 0);
+            }
+        }
+        /**
+         * Returns the upper bound of the bucket the given share of the runs falls into, in milliseconds
+         */
+        private double percentile(long runs, double share) {
+            long rank = (long) Math.ceil(runs * share);
+            long seen = 0;
+            for (int i = 0; i < buckets; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank && seen > 0) {
+                    return (1L << i) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * One timed run of an operation
+     */
+    public static final class Sample {
+        private final Timer timer;
+        private final OperationEvent event;
+        private final long start;
+
+        private Sample(Timer timer, OperationEvent event, long start) {
+            this.timer = timer;
+            this.event = event;
+            this.start = start;
+        }
+        /**
+         * Records the run, without rows or bytes
+         */
+        public void stop() {
+            stop(0, 0);
+        }
+        /**
+         * Records the run and how many rows and bytes it handled (for the JFR event, the counters are
+         * updated by the caller)
+         */
+        public void stop(long rows, long bytes) {
+            timer.record(System.nanoTime() - start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = timer.name;
+                    event.rows = rows;
+                    event.bytes = bytes;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    @Name("luo.mathis.contactsapp.Operation")
+    @Label("Contacts Operation")
+    @Category("Contacts App")
+    @Description("A load, import, save, journal write, publication, sort or validation of the contacts")
+    @StackTrace(false)
+    public static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Rows")
+        long rows;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("luo.mathis.contactsapp.Error")
+    @Label("Contacts Error")
+    @Category("Contacts App")
+    @Description("A failed load, save or journal write of the contacts")
+    public static final class ErrorEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Message")
+        String message;
+    }
+
+    private ContactMetrics() {
+    }
+    /**
+     * Counts and logs an error that is otherwise only shown to the user, or not at all
+     */
+    public static void failed(String operation, Throwable e) {
+        errors.increment();
+        lastError = operation + ": " + e;
+        logger.log(System.Logger.Level.WARNING, operation + " failed", e);
+        errorEvent(operation, String.valueOf(e));
+    }
+    /**
+     * Counts and logs a problem that did not throw, like a record that had to be skipped
+     */
+    public static void failed(String operation, String message) {
+        errors.increment();
+        lastError = operation + ": " + message;
+        logger.log(System.Logger.Level.WARNING, operation + ": " + message);
+        errorEvent(operation, message);
+    }
+    private static void errorEvent(String operation, String message) {
+        ErrorEvent event = new ErrorEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.message = message;
+            event.commit();
+        }
+    }
+    /**
+     * Returns the last error failed() was told about, or an empty string
+     */
+    public static String getLastError() {
+        return lastError;
+    }
+    /**
+     * Returns the stats of every timer by name
+     */
+    public static Map<String, TimerStats> getTimerStats() {
+        Map<String, TimerStats> stats = new LinkedHashMap<>();
+        for (Timer timer : timers) {
+            stats.put(timer.name, timer.getStats());
+        }
+        return stats;
+    }
+    /**
+     * Sets every timer and counter back to zero
+     */
+    public static void reset() {
+        for (Timer timer : timers) {
+            timer.reset();
+        }
+        rowsRead.reset();
+        rowsWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        errors.reset();
+        lastError = "";
+    }
+    /**
+     * Publishes the metrics as an MXBean on the platform MBean server (once, later calls do nothing)
+     */
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(objectName));
+            registered = true;
+        } catch (JMException e) {
+            failed("register metrics", e);
+        }
+    }
+
+    /**
+     * The MXBean, reading the static metrics
+     */
+    private static final class Bean implements ContactMetricsMXBean {
+        @Override
+        public TimerStats getLoad() {
+            return load.getStats();
+        }
+        @Override
+        public TimerStats getPageLoad() {
+            return pageLoad.getStats();
+        }
+        @Override
+        public TimerStats getImport() {
+            return importing.getStats();
+        }
+        @Override
+        public TimerStats getSave() {
+            return save.getStats();
+        }
+        @Override
+        public TimerStats getWriteBatch() {
+            return writeBatch.getStats();
+        }
+        @Override
+        public TimerStats getCompaction() {
+            return compaction.getStats();
+        }
+        @Override
+        public TimerStats getPublish() {
+            return publish.getStats();
+        }
+        @Override
+        public TimerStats getSort() {
+            return sort.getStats();
+        }
+        @Override
+        public TimerStats getValidate() {
+            return validate.getStats();
+        }
+        @Override
+        public TimerStats getValidateAll() {
+            return validateAll.getStats();
+        }
+        @Override
+        public TimerStats getEditToVisible() {
+            return editToVisible.getStats();
+        }
+        @Override
+        public long getRowsRead() {
+            return rowsRead.sum();
+        }
+        @Override
+        public long getRowsWritten() {
+            return rowsWritten.sum();
+        }
+        @Override
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+        @Override
+        public String getLastError() {
+            return lastError;
+        }
+        @Override
+        public void reset() {
+            ContactMetrics.reset();
+        }
+    }
+}
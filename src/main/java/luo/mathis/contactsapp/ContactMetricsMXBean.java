@@ -0,0 +1,29 @@
+package luo.mathis.contactsapp;
+
+/**
+ * The metrics of ContactMetrics as JMX attributes (luo.mathis.contactsapp:type=ContactMetrics). Timers show up
+ * as composite values with their count, total, mean, maximum and percentiles in milliseconds.
+ */
+public interface ContactMetricsMXBean {
+    ContactMetrics.TimerStats getLoad();
+    ContactMetrics.TimerStats getPageLoad();
+    ContactMetrics.TimerStats getImport();
+    ContactMetrics.TimerStats getSave();
+    ContactMetrics.TimerStats getWriteBatch();
+    ContactMetrics.TimerStats getCompaction();
+    ContactMetrics.TimerStats getPublish();
+    ContactMetrics.TimerStats getSort();
+    ContactMetrics.TimerStats getValidate();
+    ContactMetrics.TimerStats getValidateAll();
+    ContactMetrics.TimerStats getEditToVisible();
+    long getRowsRead();
+    long getRowsWritten();
+    long getBytesRead();
+    long getBytesWritten();
+    long getErrors();
+    String getLastError();
+    /**
+     * Sets every timer and counter back to zero
+     */
+    void reset();
+}
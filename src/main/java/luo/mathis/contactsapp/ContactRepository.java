@@ -0,0 +1,139 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * The address book without any UI: reads, changes and queries on the contact list, and listeners told
+ * about every change. The app, the command line tools and the benchmarks all go through it.
+ * <p>
+ * Changes and the plain reads (size, get, snapshot, search, findDuplicates) may come from any thread. The
+ * observable view, matcher and the listeners belong to the thread changes are published on (the FX thread in
+ * the app).
+ */
+public interface ContactRepository extends Closeable {
+
+    /**
+     * Returns how many contacts there are
+     */
+    int size();
+    /**
+     * Returns the contact at the given position
+     */
+    Contact get(int index);
+    /**
+     * Returns the contact with the given id, or null if there is none
+     */
+    Contact find(long id);
+    /**
+     * Returns a copy of all contacts in list order, as of now
+     */
+    List<Contact> snapshot();
+    /**
+     * Returns a read-only view of all contacts in list order, following later changes once they are published
+     */
+    ObservableList<Contact> findAll();
+    /**
+     * Returns a filter matching the contacts whose name, email, address or phone digits contain the query
+     * (ignoring case), or one matching everything for a blank query
+     */
+    Predicate<Contact> matcher(String query);
+    /**
+     * Returns the contacts with a field containing the query (ignoring case), in list order. Scans a
+     * snapshot, so unlike matcher() it can run on any thread.
+     */
+    default List<Contact> search(String query) {
+        String text = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        return snapshot().stream().filter(contact -> text.isEmpty() || Stream.of(ContactField.values())
+                .anyMatch(field -> field.get(contact).toLowerCase(Locale.ROOT).contains(text))).toList();
+    }
+    /**
+     * Returns the birthdays from the given date (included) to the given number of days after it, by date.
+     * Like matcher(), this belongs to the thread changes are published on. This version indexes the list
+     * for every call, repositories keep an index up to date instead.
+     */
+    default List<BirthdayIndex.Upcoming> upcomingBirthdays(LocalDate from, int days) {
+        return new BirthdayIndex(FXCollections.observableList(snapshot())).upcoming(from, days);
+    }
+    /**
+     * Returns the contacts with the given phone number, in any format PhoneNumbers understands ("who is
+     * 555-123-4567?"). Like matcher(), this belongs to the thread changes are published on. This version scans
+     * the list, repositories keep an index up to date instead.
+     */
+    default List<Contact> findByPhoneNumber(String number) {
+        long normalised = PhoneNumbers.normalise(number);
+        return snapshot().stream().filter(contact -> LongStream.of(contact.getPhones())
+                .anyMatch(phone -> phone == normalised)).toList();
+    }
+    /**
+     * Returns the groups of probable duplicates, largest first
+     */
+    default List<DuplicateFinder.Group> findDuplicates() {
+        return new DuplicateFinder().find(snapshot());
+    }
+    /**
+     * Adds a contact to the end of the list
+     */
+    void add(Contact contact);
+    /**
+     * Adds contacts to the end of the list as one change
+     */
+    void addAll(List<Contact> contacts);
+    /**
+     * Removes the contact with the given id, returns false if there is none
+     */
+    boolean remove(long id);
+    /**
+     * Removes the given contact (the current version of it), returns false if it is not in the list
+     */
+    default boolean remove(Contact contact) {
+        return remove(contact.getId());
+    }
+    /**
+     * Removes all the given contacts as one change
+     */
+    void removeAll(Collection<Contact> contacts);
+    /**
+     * Sets one field of the contact with the given id. Returns the changed contact, a copy that replaces the
+     * one in the list, or null if there is no such contact.
+     */
+    Contact update(long id, ContactField field, String value);
+    /**
+     * Sets one field of the given contact (the current version of it, by id), see update(long, ...)
+     */
+    default Contact update(Contact contact, ContactField field, String value) {
+        return update(contact.getId(), field, value);
+    }
+    /**
+     * Sets one field of all the given contacts (the current versions of them, by id) to the same value as
+     * one change. Returns how many of them were still in the list.
+     */
+    int updateAll(Collection<Contact> contacts, ContactField field, String value);
+    /**
+     * Merges every group into its first contact and removes the others as one change
+     */
+    void mergeDuplicates(List<DuplicateFinder.Group> groups);
+    /**
+     * Writes the changes that are not on their way to disk yet. Returns false if there was nothing to write.
+     */
+    boolean save();
+    /**
+     * Blocks until every change so far is on disk
+     */
+    void flush();
+    /**
+     * Tells the listener about every later change to the list
+     */
+    void addListener(ListChangeListener<? super Contact> listener);
+    void removeListener(ListChangeListener<? super Contact> listener);
+}
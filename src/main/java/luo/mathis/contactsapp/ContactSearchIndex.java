@@ -0,0 +1,203 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Trigram inverted index over name, email, address and phone digits, kept up to date by listening to the
+ * contact list. A query intersects the postings of its rarest trigrams and never scans
+ * the whole list (except for queries shorter than three characters).
+ * <p>
+ * Every contact gets a document id. Postings only ever grow: a changed or removed contact just retires its
+ * id, and the index is rebuilt once retired ids outnumber live ones.
+ */
+public class ContactSearchIndex {
+    private static final int gramLength = 3;
+
+    private final ObservableList<Contact> contacts;
+    private final Map<Long, IntList> postings = new HashMap<>();
+    private final Map<Contact, Integer> documentOf = new IdentityHashMap<>();
+    private final List<Contact> documents = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private int retired = 0;
+
+    /**
+     * Indexes the contacts currently in the list and follows every later change
+     */
+    public ContactSearchIndex(ObservableList<Contact> contacts) {
+        this.contacts = contacts;
+        contacts.forEach(this::index);
+        contacts.addListener((ListChangeListener<Contact>) change -> {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+                // a replaced row is removed and added, so an edited contact is indexed again with its new values
+                change.getRemoved().forEach(this::retire);
+                change.getAddedSubList().forEach(this::index);
+            }
+            if (retired > 1024 && retired > documentOf.size()) {
+                rebuild();
+            }
+        });
+    }
+    /**
+     * Returns a filter matching the contacts whose name, email, address or phone digits contain the query
+     * (ignoring case), or one matching everything for a blank query
+     */
+    public Predicate<Contact> search(String query) {
+        String text = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (text.isEmpty()) {
+            return contact -> true;
+        }
+        BitSet matches = new BitSet(documents.size());
+        collect(text, matches);
+        // "555-1234" should also find 5551234 and the other way round
+        String digits = digits(text);
+        boolean searchDigits = !digits.isEmpty() && !digits.equals(text);
+        if (searchDigits) {
+            collect(digits, matches);
+        }
+        // contacts added or edited after this query get new ids and are checked directly
+        int queried = documents.size();
+        return contact -> {
+            Integer document = documentOf.get(contact);
+            if (document == null) {
+                return false;
+            }
+            if (document < queried) {
+                return matches.get(document);
+            }
+            String indexed = texts.get(document);
+            return indexed.contains(text) || (searchDigits && indexed.contains(digits));
+        };
+    }
+    /**
+     * Returns how many contacts are indexed
+     */
+    public int size() {
+        return documentOf.size();
+    }
+    private void collect(String query, BitSet matches) {
+        if (query.length() < gramLength) {
+            // too short for a trigram, check every document
+            for (int document = 0; document < documents.size(); document++) {
+                if (documents.get(document) != null && texts.get(document).contains(query)) {
+                    matches.set(document);
+                }
+            }
+            return;
+        }
+        // a match contains every trigram of the query: walk the rarest posting, drop the documents missing
+        // from the second rarest (postings are sorted), then confirm the survivors with a substring check.
+        // Probing more postings costs more cache misses than the substring check saves.
+        IntList[] grams = new IntList[query.length() - gramLength + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = postings.get(gram(query, i));
+            if (grams[i] == null) {
+                return;
+            }
+        }
+        Arrays.sort(grams, (a, b) -> Integer.compare(a.size, b.size));
+        IntList rarest = grams[0];
+        candidates:
+        for (int i = 0; i < rarest.size; i++) {
+            int document = rarest.values[i];
+            if (documents.get(document) == null) {
+                continue;
+            }
+            for (int g = 1; g < Math.min(grams.length, 2); g++) {
+                if (Arrays.binarySearch(grams[g].values, 0, grams[g].size, document) < 0) {
+                    continue candidates;
+                }
+            }
+            if (texts.get(document).contains(query)) {
+                matches.set(document);
+            }
+        }
+    }
+    private void index(Contact contact) {
+        int document = documents.size();
+        String text = text(contact);
+        documents.add(contact);
+        texts.add(text);
+        documentOf.put(contact, document);
+        long previous = -1;
+        long[] grams = new long[Math.max(0, text.length() - gramLength + 1)];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(text, i);
+        }
+        Arrays.sort(grams);
+        for (long gram : grams) {
+            // add each distinct trigram once
+            if (gram != previous) {
+                postings.computeIfAbsent(gram, key -> new IntList()).add(document);
+                previous = gram;
+            }
+        }
+    }
+    private void retire(Contact contact) {
+        Integer document = documentOf.remove(contact);
+        if (document != null) {
+            documents.set(document, null);
+            texts.set(document, null);
+            retired++;
+        }
+    }
+    private void rebuild() {
+        postings.clear();
+        documentOf.clear();
+        documents.clear();
+        texts.clear();
+        retired = 0;
+        contacts.forEach(this::index);
+    }
+    /**
+     * Returns the searchable text of a contact: lower-case name, email and address, then the phone digits
+     */
+    private static String text(Contact contact) {
+        return (contact.getName() + "\n" + contact.getEmail() + "\n" + contact.getAddress()).toLowerCase(Locale.ROOT)
+                + "\n" + digits(contact.getPhoneNumbers());
+    }
+    private static String digits(String value) {
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == ';' || c == ',') {
+                // keep numbers apart so a query cannot match across two of them
+                digits.append(' ');
+            }
+        }
+        return digits.toString().trim();
+    }
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * Growable array of document ids
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
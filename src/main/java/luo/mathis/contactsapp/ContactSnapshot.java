@@ -0,0 +1,443 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the contact list (ListOfContacts.bin), an alternative to the CSV file that needs no
+ * delimiter scanning and has no forbidden characters.
+ * <p>
+ * A 16 byte header (magic, version, row count, CRC32 of the rest) is followed by one record per contact.
+ * A record starts with the contact's id as a zigzag varint of the difference to the previous id (ids are
+ * mostly ascending, so this is usually one byte; version 1 files have no ids). Name, email and address are a varint length plus UTF-8 bytes (length 0 is the "Not Filled In" placeholder,
+ * otherwise length + 1). A birthday is a tag byte followed by an epoch day as a zigzag varint for DD/MM/YYYY
+ * dates, or by the text for anything else. Phone numbers are a varint count followed by the numbers as
+ * PhoneNumbers.pack packs them (digit count and ###-###-#### flag, then the value), or a count of 0 followed by the text for anything
+ * that is not a list of numbers. Every value reads back exactly as written.
+ */
+public final class ContactSnapshot {
+    public static final String extension = ".bin";
+    private static final int magic = 0x43544342; // "CTCB"
+    private static final int version = 2;
+    private static final int versionWithoutIds = 1;
+    private static final int headerSize = 16;
+    private static final String notFilledIn = "Not Filled In";
+    private static final int placeholderBirthday = 0;
+    private static final int dateBirthday = 1;
+    private static final int textBirthday = 2;
+    // numbers are written as PhoneNumbers.pack packs them, files written before that may hold up to 18 digits
+    private static final int maxDigits = 18;
+    private static final int maxSharedBirthdays = 65536;
+
+    private ContactSnapshot() {
+    }
+    /**
+     * Writes the rows (in CSV column order) as the whole file, overwriting it, and forces it to disk. Returns
+     * the CRC32 stored in the header. Use SnapshotFormat.save to replace a file safely.
+     */
+    public static long write(Path path, List<String[]> rows) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the header is written last, once the row count and checksum are known
+            channel.position(headerSize);
+            Output out = new Output(channel, crc);
+            long previousId = 0;
+            for (String[] row : rows) {
+                long id = row.length > 5 ? ContactCsv.parseId(row[5]) : 0;
+                long delta = id - previousId;
+                out.varlong((delta << 1) ^ (delta >> 63));
+                previousId = id;
+                out.text(row[0]);
+                out.text(row[1]);
+                out.text(row[2]);
+                writeBirthday(out, row[3]);
+                writePhoneNumbers(out, row[4]);
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(magic).putInt(version).putInt(rows.size()).putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        return crc.getValue();
+    }
+    /**
+     * Maps the file and hands every contact to the consumer in order. Fails without reading a single contact
+     * if the header or checksum is wrong.
+     */
+    public static MappedCsvParser.Stats read(Path path, Consumer<Contact> onContact) throws IOException {
+        long startTime = System.nanoTime();
+        if (!Files.exists(path)) {
+            return new MappedCsvParser.Stats(0, 0, System.nanoTime() - startTime, 0);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int rows = readHeader(path, buffer);
+            boolean ids = buffer.getInt(4) != versionWithoutIds;
+            long checksum = buffer.getInt(12) & 0xffffffffL;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(headerSize, (int) size - headerSize));
+            if (crc.getValue() != checksum) {
+                throw new IOException(path + " is damaged (checksum mismatch)");
+            }
+            Input in = new Input(path, buffer, (int) size);
+            Map<Integer, String> birthdays = new HashMap<>();
+            long id = 0;
+            for (int row = 0; row < rows; row++) {
+                if (ids) {
+                    long zigzag = in.varlong();
+                    id += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+                String name = in.text();
+                String email = in.text();
+                String address = in.text();
+                String birthday = readBirthday(in, birthdays);
+                String phoneNumbers = readPhoneNumbers(in);
+                onContact.accept(new Contact(id, name, phoneNumbers, email, address, birthday));
+            }
+            return new MappedCsvParser.Stats(rows, size, System.nanoTime() - startTime, checksum);
+        }
+    }
+    /**
+     * Returns the checksum stored in the header, or 0 if the file does not exist
+     */
+    public static long checksum(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            readHeader(path, header);
+            return header.getInt(12) & 0xffffffffL;
+        }
+    }
+    /**
+     * Converts a contacts file to another format (picked by extension), including the changes in its
+     * journal. The target's old journal is deleted, it belongs to the file being replaced. Must not run
+     * while the app has either file open. Returns the number of contacts written.
+     */
+    public static int convert(Path source, Path target) throws IOException {
+        List<Contact> contacts = load(source);
+        save(target, contacts);
+        return contacts.size();
+    }
+    /**
+     * Reads a contacts file in either format with the changes in its journal applied
+     */
+    public static List<Contact> load(Path path) throws IOException {
+        List<Contact> contacts = new ArrayList<>();
+        long checksum = SnapshotFormat.of(path).read(path, contacts::add).checksum();
+        // the journal refers to contacts by id, which the store assigns and indexes
+        ContactStore store = new ContactStore();
+        store.addAll(contacts);
+        try (ContactJournal journal = new ContactJournal(path, Integer.MAX_VALUE)) {
+            store.replay(journal.recover(checksum));
+        }
+        return store.snapshot();
+    }
+    /**
+     * Replaces a contacts file (in the format of its extension) with the given contacts and deletes its
+     * journal, which belongs to the file being replaced
+     */
+    public static void save(Path path, List<Contact> contacts) throws IOException {
+        List<String[]> rows = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            rows.add(ContactCsv.toRow(contact));
+        }
+        SnapshotFormat.of(path).save(path, rows);
+        // only once the new file is in place, until then the journal still belongs to the old one
+        Files.deleteIfExists(ContactJournal.journalPath(path));
+    }
+    /**
+     * Converts between the CSV and the binary snapshot: convert ListOfContacts.csv ListOfContacts.bin
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ContactSnapshot <source> <target> (.bin is binary, anything else CSV)");
+            System.exit(2);
+        }
+        int rows = convert(Path.of(args[0]), Path.of(args[1]));
+        System.out.println("Wrote " + rows + " contacts to " + args[1]);
+    }
+    private static int readHeader(Path path, ByteBuffer header) throws IOException {
+        if (header.limit() < headerSize || header.getInt(0) != magic) {
+            throw new IOException(path + " is not a contacts snapshot");
+        }
+        if (header.getInt(4) != version && header.getInt(4) != versionWithoutIds) {
+            throw new IOException(path + " has unsupported snapshot version " + header.getInt(4));
+        }
+        return header.getInt(8);
+    }
+    private static void writeBirthday(Output out, String birthday) throws IOException {
+        if (notFilledIn.equals(birthday)) {
+            out.varint(placeholderBirthday);
+            return;
+        }
+        int epochDay = ContactValidator.epochDay(birthday);
+        if (epochDay != ContactValidator.noDate) {
+            out.varint(dateBirthday);
+            out.varint((epochDay << 1) ^ (epochDay >> 31));
+        } else {
+            out.varint(textBirthday);
+            out.text(birthday);
+        }
+    }
+    private static String readBirthday(Input in, Map<Integer, String> birthdays) throws IOException {
+        int tag = in.varint();
+        return switch (tag) {
+            case placeholderBirthday -> notFilledIn;
+            case dateBirthday -> {
+                int zigzag = in.varint();
+                int epochDay = (zigzag >>> 1) ^ -(zigzag & 1);
+                // share one string per distinct birthday, like the CSV parser
+                String birthday = birthdays.get(epochDay);
+                if (birthday == null) {
+                    birthday = formatDate(epochDay);
+                    if (birthdays.size() < maxSharedBirthdays) {
+                        birthdays.put(epochDay, birthday);
+                    }
+                }
+                yield birthday;
+            }
+            case textBirthday -> in.text();
+            default -> throw new IOException("Unknown birthday tag " + tag + " in " + in.path);
+        };
+    }
+    private static void writePhoneNumbers(Output out, String phoneNumbers) throws IOException {
+        long[] packed = packPhoneNumbers(phoneNumbers);
+        if (packed == null) {
+            out.varint(0);
+            out.text(phoneNumbers);
+            return;
+        }
+        out.varint(packed.length);
+        for (long number : packed) {
+            out.varlong(((long) PhoneNumbers.packedLength(number) << 1) | (PhoneNumbers.isHyphenated(number) ? 1 : 0));
+            out.varlong(PhoneNumbers.packedValue(number));
+        }
+    }
+    private static String readPhoneNumbers(Input in) throws IOException {
+        int count = in.varint();
+        if (count == 0) {
+            return in.text();
+        }
+        StringBuilder text = new StringBuilder(count * 13);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(';');
+            }
+            int format = (int) in.varlong();
+            long value = in.varlong();
+            int length = format >>> 1;
+            if (length > maxDigits) {
+                throw new IOException("Phone number with " + length + " digits in " + in.path);
+            }
+            PhoneNumbers.unpack(value, length, (format & 1) != 0, text);
+        }
+        return text.toString();
+    }
+    /**
+     * Packs the numbers (separated by semicolons) with PhoneNumbers.pack, or returns null if any of them is
+     * not packable
+     */
+    private static long[] packPhoneNumbers(String phoneNumbers) {
+        if (phoneNumbers == null || phoneNumbers.isEmpty()) {
+            return null;
+        }
+        int count = 1;
+        for (int i = 0; i < phoneNumbers.length(); i++) {
+            if (phoneNumbers.charAt(i) == ';') {
+                count++;
+            }
+        }
+        long[] packed = new long[count];
+        int start = 0;
+        for (int n = 0; n < count; n++) {
+            int end = phoneNumbers.indexOf(';', start);
+            if (end < 0) {
+                end = phoneNumbers.length();
+            }
+            packed[n] = PhoneNumbers.pack(phoneNumbers, start, end);
+            if (packed[n] == PhoneNumbers.invalid) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return packed;
+    }
+    private static String formatDate(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int day = date.getDayOfMonth();
+        int month = date.getMonthValue();
+        int year = date.getYear();
+        return new String(new char[]{
+                (char) ('0' + day / 10), (char) ('0' + day % 10), '/',
+                (char) ('0' + month / 10), (char) ('0' + month % 10), '/',
+                (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10), (char) ('0' + year / 10 % 10),
+                (char) ('0' + year % 10)});
+    }
+
+    /**
+     * Buffered writer of varints and strings to a channel, updating the checksum with every byte written
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final CRC32 crc;
+        private byte[] bytes = new byte[1024 * 1024];
+        private int length = 0;
+
+        Output(FileChannel channel, CRC32 crc) {
+            this.channel = channel;
+            this.crc = crc;
+        }
+        void text(String value) throws IOException {
+            if (notFilledIn.equals(value)) {
+                varint(0);
+                return;
+            }
+            byte[] encoded = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            varint(encoded.length + 1);
+            ensure(encoded.length);
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+        }
+        void varint(int value) throws IOException {
+            varlong(value & 0xffffffffL);
+        }
+        void varlong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+        void flush() throws IOException {
+            crc.update(bytes, 0, length);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            length = 0;
+        }
+        private void ensure(int count) throws IOException {
+            if (length + count > bytes.length) {
+                flush();
+                if (count > bytes.length) {
+                    bytes = new byte[count];
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads varints and strings from the mapped file, copying it into a reusable block a piece at a time
+     * (reading a mapped buffer byte by byte is much slower)
+     */
+    private static final class Input {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private int mapped = headerSize; // next byte of the file to copy into the block
+        private byte[] block = new byte[1024 * 1024];
+        private int position = 0;
+        private int limit = 0;
+
+        Input(Path path, MappedByteBuffer buffer, int size) {
+            this.path = path;
+            this.buffer = buffer;
+            this.size = size;
+        }
+        String text() throws IOException {
+            int length = varint();
+            if (length == 0) {
+                return notFilledIn;
+            }
+            length--;
+            if (length == 0) {
+                return "";
+            }
+            ensure(length);
+            boolean ascii = true;
+            for (int i = position; i < position + length; i++) {
+                if (block[i] < 0) {
+                    ascii = false;
+                    break;
+                }
+            }
+            // latin-1 decoding of ascii bytes is a plain copy into a compact string
+            String value = new String(block, position, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+        int varint() throws IOException {
+            long value = varlong();
+            if (value >>> 32 != 0) {
+                throw new IOException("Value out of range in " + path);
+            }
+            return (int) value;
+        }
+        long varlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position == limit) {
+                    ensure(1);
+                }
+                byte b = block[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed number in " + path);
+        }
+        /**
+         * Makes sure the next count bytes are in the block
+         */
+        private void ensure(int count) throws IOException {
+            if (limit - position >= count) {
+                return;
+            }
+            int remaining = limit - position;
+            if (remaining + (size - mapped) < count) {
+                throw new IOException(path + " ends in the middle of a contact");
+            }
+            if (count > block.length) {
+                byte[] larger = new byte[count];
+                System.arraycopy(block, position, larger, 0, remaining);
+                block = larger;
+            } else {
+                System.arraycopy(block, position, block, 0, remaining);
+            }
+            int copy = Math.min(block.length - remaining, size - mapped);
+            buffer.get(mapped, block, remaining, copy);
+            mapped += copy;
+            position = 0;
+            limit = remaining + copy;
+        }
+    }
+}
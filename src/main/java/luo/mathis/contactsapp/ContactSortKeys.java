@@ -0,0 +1,151 @@
+package luo.mathis.contactsapp;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Typed keys for sorting contacts by a field, computed once per contact and cached on it: collation keys for
+ * the text fields (so "émile" sorts with "Emile" and case is ignored), the epoch day for birthdays (so
+ * 02/03/1990 sorts after 01/12/1989) and the first normalised phone number. Missing birthdays and phone
+ * numbers sort last, in either direction.
+ */
+public final class ContactSortKeys {
+    private static final int parallelThreshold = 10_000;
+    // the keys of a missing birthday and a missing phone number
+    private static final int noBirthday = Integer.MAX_VALUE;
+    private static final long noPhone = Long.MAX_VALUE;
+    // collators are not thread safe (and their key methods are synchronized), so every thread gets its own
+    private static final ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    });
+
+    /**
+     * One column of a sort order
+     */
+    public record SortColumn(ContactField field, boolean ascending) {
+    }
+
+    /**
+     * The collation key of a text, with its first eight bytes packed into a long that decides most
+     * comparisons without walking the key
+     */
+    private record TextKey(long prefix, CollationKey key) implements Comparable<TextKey> {
+        static TextKey of(CollationKey key) {
+            byte[] bytes = key.toByteArray();
+            long prefix = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                prefix = prefix << 8 | (i < bytes.length ? bytes[i] & 0xff : 0);
+            }
+            return new TextKey(prefix, key);
+        }
+        @Override
+        public int compareTo(TextKey other) {
+            int result = Long.compareUnsigned(prefix, other.prefix);
+            return result != 0 ? result : key.compareTo(other.key);
+        }
+    }
+
+    private ContactSortKeys() {
+    }
+    /**
+     * Returns the comparator for the given sort order (earlier columns first), or null for an empty one
+     */
+    public static Comparator<Contact> comparator(List<SortColumn> order) {
+        Comparator<Contact> comparator = null;
+        for (SortColumn column : order) {
+            ContactField field = column.field();
+            boolean ascending = column.ascending();
+            Comparator<Contact> byField = (a, b) -> {
+                Comparable<?> keyA = key(a, field);
+                Comparable<?> keyB = key(b, field);
+                // missing values are last before the direction is applied, so they stay last either way
+                boolean missingA = isMissing(keyA);
+                boolean missingB = isMissing(keyB);
+                if (missingA || missingB) {
+                    return Boolean.compare(missingA, missingB);
+                }
+                return ascending ? compare(keyA, keyB) : compare(keyB, keyA);
+            };
+            comparator = comparator == null ? byField : comparator.thenComparing(byField);
+        }
+        return comparator;
+    }
+    /**
+     * Returns a long whose unsigned order agrees with the column's order of the contacts wherever it
+     * differs: the key itself for birthdays and phone numbers, the first bytes of the collation key for text.
+     * Sorting by it first, and by the comparator only among equal ranks, touches far less memory.
+     */
+    public static long rank(Contact contact, SortColumn column) {
+        Comparable<?> key = key(contact, column.field());
+        if (isMissing(key)) {
+            return -1; // last in unsigned order, whichever the direction
+        }
+        long rank = 0;
+        if (key instanceof TextKey text) {
+            rank = text.prefix();
+        } else if (key instanceof Integer epochDay) {
+            rank = epochDay ^ Long.MIN_VALUE; // signed to unsigned order
+        } else if (key instanceof Long phone) {
+            rank = phone;
+        }
+        return column.ascending() ? rank : ~rank;
+    }
+    /**
+     * Returns whether the rank holds the whole key of the column, so contacts with equal ranks are equal
+     */
+    public static boolean isExactRank(SortColumn column) {
+        return column.field() == ContactField.BIRTHDAY || column.field() == ContactField.PHONE_NUMBERS;
+    }
+    /**
+     * Computes the keys of every contact for the fields of the sort order ahead of sorting, in parallel for
+     * large lists
+     */
+    public static void prepare(Contact[] contacts, int size, List<SortColumn> order) {
+        IntStream indexes = IntStream.range(0, size);
+        if (size >= parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> {
+            for (SortColumn column : order) {
+                key(contacts[i], column.field());
+            }
+        });
+    }
+    /**
+     * Returns the sort key of a field of the contact, computing and caching it if needed
+     */
+    static Comparable<?> key(Contact contact, ContactField field) {
+        Comparable<?>[] keys = contact.sortKeys();
+        Comparable<?> key = keys[field.ordinal()];
+        if (key == null) {
+            key = switch (field) {
+                case BIRTHDAY -> {
+                    int epochDay = contact.getBirthdayEpochDay();
+                    yield epochDay == ContactValidator.noDate ? noBirthday : epochDay;
+                }
+                case PHONE_NUMBERS -> {
+                    long[] phones = contact.phones();
+                    yield phones.length == 0 ? noPhone : phones[0];
+                }
+                default -> {
+                    String value = field.get(contact);
+                    yield TextKey.of(collators.get().getCollationKey(value == null ? "" : value));
+                }
+            };
+            keys[field.ordinal()] = key;
+        }
+        return key;
+    }
+    private static boolean isMissing(Comparable<?> key) {
+        return key instanceof Integer epochDay && epochDay == noBirthday || key instanceof Long phone && phone == noPhone;
+    }
+    @SuppressWarnings("unchecked")
+    private static int compare(Comparable<?> a, Comparable<?> b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
@@ -0,0 +1,339 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.TransformationList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The contacts of a list sorted by typed sort keys (see ContactSortKeys), for the table. Choosing a sort
+ * order sorts the whole list once, in parallel for large lists; after that every change of the source is
+ * merged in without sorting again: new contacts are inserted where they belong and removed ones are taken
+ * out in one pass. Contacts that compare equal keep their source order, so an edit never moves other rows.
+ */
+public class ContactSortedList extends TransformationList<Contact, Contact> {
+    private static final int parallelThreshold = 10_000;
+    // up to this many rows are removed or inserted one by one, more in a single pass over the view
+    private static final int singleChanges = 16;
+
+    /**
+     * A contact and its position in the source, which breaks ties between equal contacts
+     */
+    private static final class Entry {
+        final Contact contact;
+        int source;
+        // the rank of the contact in the first sort column, see ContactSortKeys.rank
+        long rank;
+        // only used while sorting again and while removing
+        int view;
+        boolean removed;
+
+        Entry(Contact contact, int source) {
+            this.contact = contact;
+            this.source = source;
+        }
+    }
+
+    private static final Comparator<Entry> sourceOrder = Comparator.comparingInt(entry -> entry.source);
+
+    // the entries in source order and in view order
+    private List<Entry> bySource;
+    private Entry[] sorted;
+    private int size;
+    private List<ContactSortKeys.SortColumn> sortOrder = List.of();
+    private Comparator<Entry> order = sourceOrder;
+
+    /**
+     * Creates the list over the given source, unsorted (in source order) until setSortOrder is called
+     */
+    public ContactSortedList(ObservableList<Contact> source) {
+        super(source);
+        size = source.size();
+        bySource = new ArrayList<>(size);
+        sorted = new Entry[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            Entry entry = new Entry(source.get(i), i);
+            bySource.add(entry);
+            sorted[i] = entry;
+        }
+    }
+    /**
+     * Returns the columns the list is sorted by
+     */
+    public List<ContactSortKeys.SortColumn> getSortOrder() {
+        return sortOrder;
+    }
+    /**
+     * Sorts the list by the given columns (source order if empty), firing one permutation. Does nothing if
+     * it is sorted that way already, the list stays sorted by itself.
+     */
+    public void setSortOrder(List<ContactSortKeys.SortColumn> columns) {
+        if (columns.equals(sortOrder)) {
+            return;
+        }
+        sortOrder = List.copyOf(columns);
+        Comparator<Contact> comparator = ContactSortKeys.comparator(sortOrder);
+        order = comparator == null ? sourceOrder : (a, b) -> {
+            int result = Long.compareUnsigned(a.rank, b.rank);
+            if (result == 0) {
+                result = comparator.compare(a.contact, b.contact);
+            }
+            return result != 0 ? result : Integer.compare(a.source, b.source);
+        };
+        sortAgain();
+    }
+    @Override
+    public Contact get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return sorted[index].contact;
+    }
+    @Override
+    public int size() {
+        return size;
+    }
+    @Override
+    public int getSourceIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return sorted[index].source;
+    }
+    @Override
+    public int getViewIndex(int index) {
+        return Arrays.binarySearch(sorted, 0, size, bySource.get(index), order);
+    }
+    @Override
+    protected void sourceChanged(ListChangeListener.Change<? extends Contact> change) {
+        beginChange();
+        if (change.next() && change.wasPermutated()) {
+            permute(change);
+        } else {
+            change.reset();
+            applyChanges(change);
+        }
+        endChange();
+    }
+    /**
+     * Sorts the whole list by the current order and fires the permutation
+     */
+    private void sortAgain() {
+        ContactMetrics.Sample sample = ContactMetrics.sort.start();
+        for (int i = 0; i < size; i++) {
+            sorted[i].view = i;
+        }
+        if (!sortOrder.isEmpty()) {
+            Contact[] contacts = new Contact[size];
+            for (int i = 0; i < size; i++) {
+                contacts[i] = sorted[i].contact;
+            }
+            // the keys are computed up front, in parallel, instead of by the comparisons
+            ContactSortKeys.prepare(contacts, size, sortOrder);
+            for (int i = 0; i < size; i++) {
+                rank(sorted[i]);
+            }
+        }
+        if (sortOrder.isEmpty()) {
+            bySource.toArray(sorted);
+        } else if (size >= parallelThreshold) {
+            sortByRank();
+        } else {
+            Arrays.sort(sorted, 0, size, order);
+        }
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[sorted[i].view] = i;
+        }
+        beginChange();
+        nextPermutation(0, size, permutation);
+        endChange();
+        sample.stop(size, 0);
+    }
+    /**
+     * Sorts a large list by the ranks of its entries as primitives, which is much faster than comparing
+     * entries scattered over the heap: every rank is replaced by its position among the distinct ranks, the
+     * (position, source position) pairs are packed into longs and sorted in parallel, and only entries with
+     * the same rank are compared with the full order, unless the rank is the whole order.
+     */
+    private void sortByRank() {
+        long[] ranks = new long[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = bySource.get(i).rank ^ Long.MIN_VALUE; // unsigned to signed order
+        }
+        long[] distinct = ranks.clone();
+        Arrays.parallelSort(distinct);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || distinct[i] != distinct[count - 1]) {
+                distinct[count++] = distinct[i];
+            }
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = (long) Arrays.binarySearch(distinct, 0, count, ranks[i]) << 32 | i;
+        }
+        Arrays.parallelSort(packed);
+        // equal ranks are in source order now, which is all the order there is to it for a single exact rank
+        boolean exact = sortOrder.size() == 1 && ContactSortKeys.isExactRank(sortOrder.get(0));
+        for (int start = 0; start < size; ) {
+            int end = start;
+            while (end < size && packed[end] >>> 32 == packed[start] >>> 32) {
+                sorted[end] = bySource.get((int) packed[end]);
+                end++;
+            }
+            if (end - start > 1 && !exact) {
+                Arrays.sort(sorted, start, end, order);
+            }
+            start = end;
+        }
+    }
+    /**
+     * Follows a reordering of the source (which changes how equal contacts are ordered)
+     */
+    private void permute(ListChangeListener.Change<? extends Contact> change) {
+        Entry[] reordered = bySource.toArray(new Entry[0]);
+        for (int i = change.getFrom(); i < change.getTo(); i++) {
+            Entry entry = bySource.get(i);
+            entry.source = change.getPermutation(i);
+            reordered[entry.source] = entry;
+        }
+        bySource = new ArrayList<>(Arrays.asList(reordered));
+        sortAgain();
+    }
+    /**
+     * Applies the additions and removals of a change: the removed contacts are taken out of the view, the
+     * added ones inserted where they belong, with one change fired for all of them
+     */
+    private void applyChanges(ListChangeListener.Change<? extends Contact> change) {
+        List<Entry> added = new ArrayList<>();
+        int removed = 0;
+        boolean replacedOnly = true;
+        while (change.next() && replacedOnly) {
+            replacedOnly = change.getRemovedSize() == change.getAddedSize();
+        }
+        change.reset();
+        if (replacedOnly) {
+            // edits: the source positions stay the same, so the old entries can be found by binary search
+            List<Entry> replaced = new ArrayList<>();
+            while (change.next()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    Entry entry = rank(new Entry(change.getList().get(i), i));
+                    replaced.add(bySource.set(i, entry));
+                    added.add(entry);
+                }
+            }
+            if (replaced.size() <= singleChanges) {
+                for (Entry entry : replaced) {
+                    int index = Arrays.binarySearch(sorted, 0, size, entry, order);
+                    System.arraycopy(sorted, index + 1, sorted, index, size - index - 1);
+                    sorted[--size] = null;
+                    nextRemove(index, entry.contact);
+                }
+            } else {
+                replaced.forEach(entry -> entry.removed = true);
+                removeMarked();
+            }
+        } else {
+            // renumber the source positions in one pass, the order of the remaining entries does not change
+            List<Entry> next = new ArrayList<>(getSource().size());
+            int old = 0;
+            while (change.next()) {
+                if (change.wasUpdated()) {
+                    continue; // contacts are replaced rather than changed in place
+                }
+                while (next.size() < change.getFrom()) {
+                    Entry entry = bySource.get(old++);
+                    entry.source = next.size();
+                    next.add(entry);
+                }
+                for (int i = 0; i < change.getRemovedSize(); i++) {
+                    bySource.get(old++).removed = true;
+                    removed++;
+                }
+                for (Contact contact : change.getAddedSubList()) {
+                    Entry entry = rank(new Entry(contact, next.size()));
+                    next.add(entry);
+                    added.add(entry);
+                }
+            }
+            while (old < bySource.size()) {
+                Entry entry = bySource.get(old++);
+                entry.source = next.size();
+                next.add(entry);
+            }
+            bySource = next;
+            if (removed > 0) {
+                removeMarked();
+            }
+        }
+        if (!added.isEmpty()) {
+            insert(added);
+        }
+    }
+    private Entry rank(Entry entry) {
+        entry.rank = sortOrder.isEmpty() ? 0 : ContactSortKeys.rank(entry.contact, sortOrder.get(0));
+        return entry;
+    }
+    /**
+     * Takes the entries marked as removed out of the view in one pass
+     */
+    private void removeMarked() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Entry entry = sorted[i];
+            if (entry.removed) {
+                // the position it has once the ones before it are gone
+                nextRemove(kept, entry.contact);
+            } else {
+                sorted[kept++] = entry;
+            }
+        }
+        Arrays.fill(sorted, kept, size, null);
+        size = kept;
+    }
+    /**
+     * Inserts new entries where they belong. A few are inserted one by one, more are sorted and merged in
+     * with one copy of the view, finding each insertion point by binary search from the previous one.
+     */
+    private void insert(List<Entry> added) {
+        if (added.size() <= singleChanges) {
+            if (size + added.size() > sorted.length) {
+                sorted = Arrays.copyOf(sorted, size + added.size() + size / 2);
+            }
+            for (Entry entry : added) {
+                int at = -Arrays.binarySearch(sorted, 0, size, entry, order) - 1;
+                System.arraycopy(sorted, at, sorted, at + 1, size - at);
+                sorted[at] = entry;
+                size++;
+                nextAdd(at, at + 1);
+            }
+            return;
+        }
+        Entry[] adding = added.toArray(new Entry[0]);
+        if (adding.length >= parallelThreshold) {
+            Arrays.parallelSort(adding, order);
+        } else {
+            Arrays.sort(adding, order);
+        }
+        Entry[] merged = new Entry[Math.max(sorted.length, size + adding.length + (size + adding.length) / 2)];
+        int from = 0;
+        int to = 0;
+        for (Entry entry : adding) {
+            int at = -Arrays.binarySearch(sorted, from, size, entry, order) - 1;
+            System.arraycopy(sorted, from, merged, to, at - from);
+            to += at - from;
+            from = at;
+            merged[to] = entry;
+            nextAdd(to, to + 1);
+            to++;
+        }
+        System.arraycopy(sorted, from, merged, to, size - from);
+        size += adding.length;
+        sorted = merged;
+    }
+}
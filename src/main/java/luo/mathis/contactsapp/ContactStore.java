@@ -0,0 +1,789 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ModifiableObservableListBase;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Holds the contacts and applies changes to them directly in memory, so a change made by the app never has
+ * to be re-read from the file to become visible.
+ * <p>
+ * Any thread may read or change the store: readers share a read lock, changes take the write lock and are
+ * journalled in the order they were made. The observable list shown in the table follows on the publisher
+ * (Platform::runLater in the app): every change made since the last publication is applied there in one go,
+ * with consecutive additions merged into one change event. Contacts are never changed in place, an update
+ * replaces the contact with an edited copy, so a contact that is on screen is never touched off the FX thread.
+ * <p>
+ * Every contact gets a unique id when it is added (keeping the one it was loaded with unless it is taken).
+ * Finding, updating and removing a contact by id goes through a hash index of rows instead of scanning the
+ * list. A removal leaves its row empty rather than shifting the ones after it, so the index stays correct,
+ * and a tree of live row counts turns a row into its position in the list and back in O(log n). The empty
+ * rows are dropped in one pass once there are as many of them as contacts.
+ */
+public class ContactStore {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // the contacts as of the last change, null where one was removed, guarded by the lock
+    private final List<Contact> rows = new ArrayList<>();
+    // which rows still hold a contact, guarded by the lock
+    private final LiveRows live = new LiveRows();
+    // the row of every contact by id, guarded by the lock
+    private final Positions positions = new Positions();
+    private long nextId = 1;
+    // the published copy, only touched on the publisher
+    private final PublishedList contacts = new PublishedList();
+    private final Executor publisher;
+    // changes made but not published yet, in order, guarded by publication
+    private final Object publication = new Object();
+    private List<Consumer<PublishedList>> pending = new ArrayList<>();
+    // contacts added since the last other pending change, published as one addAll
+    private List<Contact> pendingAdds;
+    private boolean publishScheduled = false;
+    private ContactJournal journal;
+    private PersistenceService persistence;
+    private int changesSinceCompaction = 0;
+
+    /**
+     * Creates a store that publishes its changes right away, on the thread that made them
+     */
+    public ContactStore() {
+        this(Runnable::run);
+    }
+    /**
+     * Creates a store that publishes its changes to the observable list on the given executor
+     */
+    public ContactStore(Executor publisher) {
+        this.publisher = publisher;
+    }
+    /**
+     * Returns the observable list backing the table. It lags behind the store until the publisher has run,
+     * and must only be used on the publisher's thread.
+     */
+    public ObservableList<Contact> getContacts() {
+        return contacts;
+    }
+    /**
+     * Returns how many contacts there are
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    /**
+     * Returns the contact at the given position
+     */
+    public Contact get(int index) {
+        lock.readLock().lock();
+        try {
+            return rows.get(live.row(index));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    /**
+     * Returns the contact with the given id, or null if there is none
+     */
+    public Contact find(long id) {
+        lock.readLock().lock();
+        try {
+            int row = positions.get(id);
+            return row < 0 ? null : rows.get(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    /**
+     * Returns a copy of the list as of now, for reading on any thread while the store keeps changing
+     */
+    public List<Contact> snapshot() {
+        lock.readLock().lock();
+        try {
+            List<Contact> snapshot = new ArrayList<>(live.size());
+            for (Contact contact : rows) {
+                if (contact != null) {
+                    snapshot.add(contact);
+                }
+            }
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    /**
+     * Records every following change in the given journal (null to stop journalling). The journal writes
+     * run on the given persistence service, or on the calling thread if it is null.
+     */
+    public void setJournal(ContactJournal journal, PersistenceService persistence) {
+        lock.writeLock().lock();
+        try {
+            this.journal = journal;
+            this.persistence = persistence;
+            this.changesSinceCompaction = journal == null ? 0 : journal.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    /**
+     * Applies recovered journal records to the store without journalling them again
+     */
+    public void replay(List<String> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ContactJournal.replay(records, new Replay());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Adds a single contact to the end of the list
+     */
+    public void add(Contact contact) {
+        lock.writeLock().lock();
+        try {
+            append(contact);
+            pendingAdd(List.of(contact));
+            if (journal != null) {
+                persist(() -> journal.logAdd(contact));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Adds several contacts at once (one change event for the whole batch), without journalling them
+     */
+    public void addAll(Collection<Contact> newContacts) {
+        lock.writeLock().lock();
+        try {
+            newContacts.forEach(this::append);
+            pendingAdd(newContacts);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Adds imported contacts to the end of the list as one change event and journals them as one write
+     */
+    public void importAll(List<Contact> imported) {
+        if (imported.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            imported.forEach(this::append);
+            pendingAdd(imported);
+            if (journal != null) {
+                persist(() -> journal.logAddAll(imported), imported.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Removes the given contact (by id), returns false if it was not in the store
+     */
+    public boolean remove(Contact contact) {
+        return remove(contact.getId());
+    }
+    /**
+     * Removes the contact with the given id, returns false if there is none
+     */
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            if (!removeLocked(id)) {
+                return false;
+            }
+            if (journal != null) {
+                persist(() -> journal.logDelete(id));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+        return true;
+    }
+    /**
+     * Removes all the given contacts (by id) with one change event, journalled as one batch
+     */
+    public void removeAll(Collection<Contact> removed) {
+        lock.writeLock().lock();
+        try {
+            removeAllLocked(removed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Merges every group of duplicates into its first contact (see DuplicateFinder.merge) and removes the
+     * others, journalling the merged fields and the removals as one batch. Groups whose first contact has
+     * been removed since they were found are skipped.
+     */
+    public void mergeDuplicates(List<DuplicateFinder.Group> groups) {
+        lock.writeLock().lock();
+        try {
+            List<PersistenceService.Task> updates = new ArrayList<>();
+            List<Contact> removed = new ArrayList<>();
+            for (DuplicateFinder.Group group : groups) {
+                long id = group.contacts().get(0).getId();
+                int row = positions.get(id);
+                if (row < 0) {
+                    continue;
+                }
+                Contact merged = rows.get(row).copy();
+                DuplicateFinder.merge(group.contacts()).forEach((field, value) -> {
+                    if (!value.equals(field.get(merged))) {
+                        field.set(merged, value);
+                        updates.add(() -> journal.logUpdate(id, field, value));
+                    }
+                });
+                rows.set(row, merged);
+                int index = live.indexOf(row);
+                pendingChange(list -> list.set(index, merged));
+                removed.addAll(group.contacts().subList(1, group.contacts().size()));
+            }
+            if (journal != null && !updates.isEmpty()) {
+                persist(() -> {
+                    for (PersistenceService.Task update : updates) {
+                        update.run();
+                    }
+                }, updates.size());
+            }
+            removeAllLocked(removed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+    }
+    /**
+     * Sets one field of a contact (by id), see update(long, ContactField, String)
+     */
+    public Contact update(Contact contact, ContactField field, String value) {
+        return update(contact.getId(), field, value);
+    }
+    /**
+     * Sets one field of the contact with the given id by replacing it with an edited copy, and notifies
+     * listeners about that row only. Returns the copy, or null if there is no such contact.
+     */
+    public Contact update(long id, ContactField field, String value) {
+        Contact updated;
+        lock.writeLock().lock();
+        try {
+            updated = updateLocked(id, field, value);
+            if (updated != null && journal != null) {
+                persist(() -> journal.logUpdate(id, field, value));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+        return updated;
+    }
+    /**
+     * Sets one field of all the given contacts (by id) to the same value with one change event, journalled
+     * as one batch. Contacts no longer in the store are skipped. Returns how many contacts were changed.
+     */
+    public int updateAll(Collection<Contact> updated, ContactField field, String value) {
+        int count = 0;
+        lock.writeLock().lock();
+        try {
+            int[] indexes = new int[updated.size()];
+            Contact[] copies = new Contact[updated.size()];
+            long[] ids = new long[updated.size()];
+            for (Contact contact : updated) {
+                int row = positions.get(contact.getId());
+                if (row < 0) {
+                    continue;
+                }
+                Contact copy = rows.get(row).copy();
+                field.set(copy, value);
+                rows.set(row, copy);
+                indexes[count] = live.indexOf(row);
+                copies[count] = copy;
+                ids[count++] = copy.getId();
+            }
+            if (count == 0) {
+                return 0;
+            }
+            int changed = count;
+            pendingChange(list -> list.setAll(indexes, copies, changed));
+            if (journal != null) {
+                persist(() -> {
+                    for (int i = 0; i < changed; i++) {
+                        journal.logUpdate(ids[i], field, value);
+                    }
+                }, changed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish();
+        return count;
+    }
+    /**
+     * Copies every contact into a file row, for writing them elsewhere while the list keeps changing
+     */
+    public List<String[]> snapshotRows() {
+        lock.readLock().lock();
+        try {
+            List<String[]> snapshot = new ArrayList<>(live.size());
+            for (Contact contact : rows) {
+                if (contact != null) {
+                    snapshot.add(ContactCsv.toRow(contact));
+                }
+            }
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    /**
+     * Gives the contact an id if it has none or its id is taken, and adds it to the end of the rows
+     */
+    private void append(Contact contact) {
+        long id = contact.getId();
+        if (id <= 0 || positions.get(id) >= 0) {
+            id = nextId++;
+            contact.setId(id);
+        } else if (id >= nextId) {
+            nextId = id + 1;
+        }
+        positions.put(id, rows.size());
+        rows.add(contact);
+        live.add();
+    }
+    private Contact updateLocked(long id, ContactField field, String value) {
+        int row = positions.get(id);
+        if (row < 0) {
+            return null;
+        }
+        Contact updated = rows.get(row).copy();
+        field.set(updated, value);
+        rows.set(row, updated);
+        // a replace event for just this row
+        int index = live.indexOf(row);
+        pendingChange(list -> list.set(index, updated));
+        return updated;
+    }
+    private boolean removeLocked(long id) {
+        int row = positions.get(id);
+        if (row < 0) {
+            return false;
+        }
+        int index = live.indexOf(row);
+        rows.set(row, null);
+        live.remove(row);
+        positions.remove(id);
+        pendingChange(list -> list.remove(index));
+        dropRemovedRows();
+        return true;
+    }
+    private void removeAllLocked(Collection<Contact> removed) {
+        // the contacts in the list now, which may be edited copies of the given ones
+        Set<Contact> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        long[] deleted = new long[removed.size()];
+        int count = 0;
+        for (Contact contact : removed) {
+            int row = positions.get(contact.getId());
+            if (row < 0) {
+                continue;
+            }
+            current.add(rows.get(row));
+            rows.set(row, null);
+            live.remove(row);
+            positions.remove(contact.getId());
+            deleted[count++] = contact.getId();
+        }
+        if (count == 0) {
+            return;
+        }
+        // the published list holds the same contacts once the changes before this one are applied
+        pendingChange(list -> list.removeAll(current));
+        if (journal != null) {
+            int removals = count;
+            persist(() -> {
+                for (int i = 0; i < removals; i++) {
+                    journal.logDelete(deleted[i]);
+                }
+            }, count);
+        }
+        dropRemovedRows();
+    }
+    /**
+     * Closes the gaps left by removals once there are as many of them as contacts (so each removal pays for
+     * at most two rows of this pass)
+     */
+    private void dropRemovedRows() {
+        int removed = rows.size() - live.size();
+        if (removed < 1024 || removed < live.size()) {
+            return;
+        }
+        int kept = 0;
+        for (int row = 0; row < rows.size(); row++) {
+            Contact contact = rows.get(row);
+            if (contact != null) {
+                rows.set(kept, contact);
+                positions.put(contact.getId(), kept++);
+            }
+        }
+        rows.subList(kept, rows.size()).clear();
+        live.reset(kept);
+    }
+    private void pendingChange(Consumer<PublishedList> change) {
+        synchronized (publication) {
+            pending.add(change);
+            pendingAdds = null;
+        }
+    }
+    private void pendingAdd(Collection<Contact> added) {
+        synchronized (publication) {
+            if (pendingAdds == null) {
+                List<Contact> adds = new ArrayList<>(added.size());
+                pending.add(list -> list.addAll(adds));
+                pendingAdds = adds;
+            }
+            pendingAdds.addAll(added);
+        }
+    }
+    /**
+     * Asks the publisher to apply the pending changes, unless it has been asked already. Called after the
+     * write lock is released, so listeners never run while it is held.
+     */
+    private void publish() {
+        synchronized (publication) {
+            if (publishScheduled || pending.isEmpty()) {
+                return;
+            }
+            publishScheduled = true;
+        }
+        publisher.execute(this::applyPending);
+    }
+    private void applyPending() {
+        // one publication at a time, so batches taken in order are applied in order
+        synchronized (contacts) {
+            ContactMetrics.Sample sample = ContactMetrics.publish.start();
+            List<Consumer<PublishedList>> batch;
+            synchronized (publication) {
+                batch = pending;
+                pending = new ArrayList<>();
+                pendingAdds = null;
+                publishScheduled = false;
+            }
+            for (Consumer<PublishedList> change : batch) {
+                change.accept(contacts);
+            }
+            sample.stop(batch.size(), 0);
+        }
+    }
+    /**
+     * Runs a journal write and asks for a compaction once enough changes have been journalled
+     */
+    private void persist(PersistenceService.Task task) {
+        persist(task, 1);
+    }
+    private void persist(PersistenceService.Task task, int changes) {
+        run(task);
+        changesSinceCompaction += changes;
+        if (changesSinceCompaction >= journal.getCompactEvery()) {
+            changesSinceCompaction = 0;
+            List<String[]> snapshot = snapshotRows();
+            run(() -> journal.compact(snapshot));
+        }
+    }
+    private void run(PersistenceService.Task task) {
+        if (persistence != null) {
+            persistence.submit(task);
+            return;
+        }
+        try {
+            task.run();
+            journal.flush();
+        } catch (IOException e) {
+            ContactMetrics.failed("journal write", e);
+        }
+    }
+
+    /**
+     * Applies replayed journal records to the rows without journalling them again
+     */
+    private final class Replay implements ContactJournal.Target {
+        @Override
+        public void add(Contact contact) {
+            append(contact);
+            pendingAdd(List.of(contact));
+        }
+        @Override
+        public void update(long id, ContactField field, String value) {
+            updateLocked(id, field, value);
+        }
+        @Override
+        public void remove(long id) {
+            removeLocked(id);
+        }
+        @Override
+        public void updateAt(int index, ContactField field, String value) {
+            updateLocked(rows.get(live.row(index)).getId(), field, value);
+        }
+        @Override
+        public void removeAt(int index) {
+            removeLocked(rows.get(live.row(index)).getId());
+        }
+    }
+
+    /**
+     * The published list, which can replace any number of rows and remove any number of contacts with one
+     * change event each
+     */
+    private static final class PublishedList extends ModifiableObservableListBase<Contact> {
+        private final ArrayList<Contact> elements = new ArrayList<>();
+
+        @Override
+        public Contact get(int index) {
+            return elements.get(index);
+        }
+        @Override
+        public int size() {
+            return elements.size();
+        }
+        @Override
+        public boolean addAll(Collection<? extends Contact> added) {
+            if (added.isEmpty()) {
+                return false;
+            }
+            beginChange();
+            int from = elements.size();
+            elements.addAll(added);
+            nextAdd(from, elements.size());
+            endChange();
+            return true;
+        }
+        /**
+         * Replaces the first count rows at the given positions with the given contacts
+         */
+        void setAll(int[] indexes, Contact[] replacements, int count) {
+            // in list order, which the change builder handles without shuffling its parts around
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (long) indexes[i] << 32 | i;
+            }
+            Arrays.sort(order);
+            beginChange();
+            for (long entry : order) {
+                int index = (int) (entry >>> 32);
+                nextSet(index, elements.set(index, replacements[(int) entry]));
+            }
+            endChange();
+        }
+        /**
+         * Removes the given contacts (compared by identity) in one pass over the list
+         */
+        @Override
+        public boolean removeAll(Collection<?> removed) {
+            Set<Object> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+            identities.addAll(removed);
+            beginChange();
+            int kept = 0;
+            for (int i = 0; i < elements.size(); i++) {
+                Contact contact = elements.get(i);
+                if (identities.contains(contact)) {
+                    // the position it has once the ones before it are gone
+                    nextRemove(kept, contact);
+                } else {
+                    elements.set(kept++, contact);
+                }
+            }
+            boolean changed = kept < elements.size();
+            elements.subList(kept, elements.size()).clear();
+            endChange();
+            return changed;
+        }
+        @Override
+        protected void doAdd(int index, Contact contact) {
+            elements.add(index, contact);
+        }
+        @Override
+        protected Contact doSet(int index, Contact contact) {
+            return elements.set(index, contact);
+        }
+        @Override
+        protected Contact doRemove(int index) {
+            return elements.remove(index);
+        }
+    }
+
+    /**
+     * Which rows still hold a contact, as a Fenwick tree of counts: the position in the list of a row and the
+     * row at a position are both found in O(log n), and so is adding or removing a row
+     */
+    private static final class LiveRows {
+        // tree[i] counts the live rows among rows i - (i & -i) to i - 1
+        private int[] tree = new int[17];
+        private int rows;
+        private int size;
+
+        int size() {
+            return size;
+        }
+        /**
+         * Adds a live row after the last one
+         */
+        void add() {
+            if (rows + 1 == tree.length) {
+                tree = Arrays.copyOf(tree, tree.length * 2);
+            }
+            int i = ++rows;
+            tree[i] = 1 + prefix(i - 1) - prefix(i - (i & -i));
+            size++;
+        }
+        /**
+         * Marks a live row as removed
+         */
+        void remove(int row) {
+            for (int i = row + 1; i <= rows; i += i & -i) {
+                tree[i]--;
+            }
+            size--;
+        }
+        /**
+         * Returns the position in the list of a live row, which is how many live rows there are before it
+         */
+        int indexOf(int row) {
+            return prefix(row);
+        }
+        /**
+         * Returns the row at the given position in the list
+         */
+        int row(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            // the last row with at most index live rows before it
+            int row = 0;
+            for (int step = Integer.highestOneBit(rows); step > 0; step >>= 1) {
+                if (row + step <= rows && tree[row + step] <= index) {
+                    row += step;
+                    index -= tree[row];
+                }
+            }
+            return row;
+        }
+        /**
+         * Starts again with the given number of rows, all of them live
+         */
+        void reset(int count) {
+            tree = new int[Math.max(16, count) + 1];
+            for (int i = 1; i <= count; i++) {
+                tree[i] = i & -i;
+            }
+            rows = count;
+            size = count;
+        }
+        private int prefix(int i) {
+            int sum = 0;
+            for (; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Hash map from id to row without boxing (ids are positive, 0 marks a free slot). Linear probing,
+     * removals shift the following entries back instead of leaving tombstones.
+     */
+    private static final class Positions {
+        private long[] ids = new long[16];
+        private int[] positions = new int[16];
+        private int size;
+
+        /**
+         * Returns the row stored for the id, or -1 if there is none
+         */
+        int get(long id) {
+            int mask = ids.length - 1;
+            for (int slot = slot(id, mask); ids[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) {
+                    return positions[slot];
+                }
+            }
+            return -1;
+        }
+        void put(long id, int position) {
+            if ((size + 1) * 2 > ids.length) {
+                grow();
+            }
+            int mask = ids.length - 1;
+            int slot = slot(id, mask);
+            while (ids[slot] != 0 && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (ids[slot] == 0) {
+                ids[slot] = id;
+                size++;
+            }
+            positions[slot] = position;
+        }
+        void remove(long id) {
+            int mask = ids.length - 1;
+            int slot = slot(id, mask);
+            while (ids[slot] != id) {
+                if (ids[slot] == 0) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // move later entries of the same probe run into the gap so lookups never stop early
+            int gap = slot;
+            for (int next = (gap + 1) & mask; ids[next] != 0; next = (next + 1) & mask) {
+                int home = slot(ids[next], mask);
+                boolean between = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+                if (!between) {
+                    ids[gap] = ids[next];
+                    positions[gap] = positions[next];
+                    gap = next;
+                }
+            }
+            ids[gap] = 0;
+            size--;
+        }
+        private void grow() {
+            long[] oldIds = ids;
+            int[] oldPositions = positions;
+            ids = new long[oldIds.length * 2];
+            positions = new int[oldIds.length * 2];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    put(oldIds[i], oldPositions[i]);
+                }
+            }
+        }
+        private static int slot(long id, int mask) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package luo.mathis.contactsapp;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
+
+/**
+ * Validates contact fields without compiling a regex per call. Phone numbers and birthdays are checked by
+ * hand-written scanners, emails by one precompiled pattern. Results are structured, so the same checks serve
+ * the Add Contact window, the table's edit handlers and bulk imports. Instances are stateless and thread-safe.
+ */
+public final class ContactValidator {
+    private static final String notFilledIn = "Not Filled In";
+    private static final Pattern emailPattern = Pattern.compile(".+@.+\\..+");
+
+    public static final String phoneFormatMessage = "Phone numbers should ideally be in the format ###-###-####, separated by semicolons (only digits are also allowed)";
+    public static final String phoneWarningMessage = "Format is not a US or CA phone number format";
+    public static final String emailMessage = "Please enter a valid email address in the form username@domain.tld";
+    public static final String birthdayFormatMessage = "Birthday should be in the format DD/MM/YYYY";
+    public static final String birthdayMonthMessage = "Invalid month in birthday";
+    public static final String birthdayDayMessage = "Invalid day in birthday";
+    // the epoch day of a birthday that is not a valid date
+    public static final int noDate = Integer.MIN_VALUE;
+
+    public enum Severity { ERROR, WARNING }
+
+    /**
+     * A single problem with one field
+     */
+    public record Problem(ContactField field, Severity severity, String message) {
+    }
+
+    /**
+     * The problems found in one value or contact (empty if everything is fine)
+     */
+    public record Result(List<Problem> problems) {
+        public static final Result valid = new Result(List.of());
+
+        public boolean isValid() {
+            return problems.stream().noneMatch(problem -> problem.severity() == Severity.ERROR);
+        }
+        public boolean hasWarnings() {
+            return problems.stream().anyMatch(problem -> problem.severity() == Severity.WARNING);
+        }
+        /**
+         * Returns the errors as lines of "- message", the way the error alerts list them
+         */
+        public String errorMessage() {
+            StringBuilder message = new StringBuilder();
+            for (Problem problem : problems) {
+                if (problem.severity() == Severity.ERROR) {
+                    message.append("- ").append(problem.message()).append("\n");
+                }
+            }
+            return message.toString();
+        }
+        /**
+         * Returns the message of the first error, or null if there is none
+         */
+        public String firstError() {
+            for (Problem problem : problems) {
+                if (problem.severity() == Severity.ERROR) {
+                    return problem.message();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A contact that failed validation, with its problems
+     */
+    public record Invalid(Contact contact, Result result) {
+    }
+
+    /**
+     * Validates the fields of the Add Contact window (empty means not filled in)
+     */
+    public Result validate(String phoneNumbers, String email, String birthday) {
+        long start = System.nanoTime();
+        Result result = check(phoneNumbers, email, birthday);
+        ContactMetrics.validate.record(System.nanoTime() - start);
+        return result;
+    }
+    /**
+     * Validates a stored contact ("Not Filled In" counts as empty)
+     */
+    public Result validate(Contact contact) {
+        return validate(filled(contact.getPhoneNumbers()), filled(contact.getEmail()), filled(contact.getBirthday()));
+    }
+    /**
+     * Validates many contacts in parallel and returns the ones with errors or warnings, in input order
+     */
+    public List<Invalid> validateAll(Iterable<Contact> contacts) {
+        ContactMetrics.Sample sample = ContactMetrics.validateAll.start();
+        // timed as a whole, the single contacts are not
+        List<Invalid> invalid = StreamSupport.stream(contacts.spliterator(), true)
+                .map(contact -> {
+                    Result result = check(filled(contact.getPhoneNumbers()), filled(contact.getEmail()),
+                            filled(contact.getBirthday()));
+                    return result.problems().isEmpty() ? null : new Invalid(contact, result);
+                })
+                .filter(Objects::nonNull)
+                .toList();
+        sample.stop(invalid.size(), 0);
+        return invalid;
+    }
+    public Result validatePhoneNumbers(String phoneNumbers) {
+        return single(problems -> checkPhoneNumbers(phoneNumbers, problems));
+    }
+    public Result validateEmail(String email) {
+        return single(problems -> checkEmail(email, problems));
+    }
+    public Result validateBirthday(String birthday) {
+        return single(problems -> checkBirthday(birthday, problems));
+    }
+    /**
+     * Checks if the given year is a leap year
+     */
+    public static boolean isLeapYear(int year) {
+        if (year % 4 == 0) {
+            if (year % 100 == 0) {
+                return year % 400 == 0;
+            } else {
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
+    /**
+     * Checks if the value has the DD/MM/YYYY format (not whether the date exists)
+     */
+    public static boolean isDate(String value) {
+        return value != null && value.length() == 10 && value.charAt(2) == '/' && value.charAt(5) == '/'
+                && isDigits(value, 0, 2) && isDigits(value, 3, 5) && isDigits(value, 6, 10);
+    }
+    /**
+     * Returns the epoch day of a DD/MM/YYYY date, or noDate if the text is not a date that exists
+     */
+    public static int epochDay(String value) {
+        if (!isDate(value)) {
+            return noDate;
+        }
+        int day = number(value, 0, 2);
+        int month = number(value, 3, 5);
+        int year = number(value, 6, 10);
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(month, year)) {
+            return noDate;
+        }
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
+    /**
+     * Returns the number of days in the given month (1-12)
+     */
+    public static int daysInMonth(int month, int year) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+    private static void checkPhoneNumbers(String phoneNumbers, List<Problem> problems) {
+        if (phoneNumbers == null || phoneNumbers.isEmpty()) {
+            return;
+        }
+        // ###-###-####(;###-###-####)* is fine, digits(;digits)* only gets a warning, anything else is an error
+        boolean allFormatted = true;
+        boolean allDigits = true;
+        int start = 0;
+        while (start <= phoneNumbers.length()) {
+            int end = phoneNumbers.indexOf(';', start);
+            if (end < 0) {
+                end = phoneNumbers.length();
+            }
+            allFormatted &= isFormattedNumber(phoneNumbers, start, end);
+            allDigits &= isDigits(phoneNumbers, start, end);
+            if (!allFormatted && !allDigits) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (allFormatted) {
+            return;
+        }
+        if (allDigits) {
+            problems.add(new Problem(ContactField.PHONE_NUMBERS, Severity.WARNING, phoneWarningMessage));
+        } else {
+            problems.add(new Problem(ContactField.PHONE_NUMBERS, Severity.ERROR, phoneFormatMessage));
+        }
+    }
+    private static void checkEmail(String email, List<Problem> problems) {
+        if (email == null || email.isEmpty()) {
+            return;
+        }
+        if (email.indexOf(' ') >= 0 || email.indexOf(',') >= 0 || !emailPattern.matcher(email).matches()) {
+            problems.add(new Problem(ContactField.EMAIL, Severity.ERROR, emailMessage));
+        }
+    }
+    private static void checkBirthday(String birthday, List<Problem> problems) {
+        if (birthday == null || birthday.isEmpty()) {
+            return;
+        }
+        if (!isDate(birthday)) {
+            problems.add(new Problem(ContactField.BIRTHDAY, Severity.ERROR, birthdayFormatMessage));
+            return;
+        }
+        int day = number(birthday, 0, 2);
+        int month = number(birthday, 3, 5);
+        int year = number(birthday, 6, 10);
+        boolean validMonth = month >= 1 && month <= 12;
+        if (!validMonth) {
+            problems.add(new Problem(ContactField.BIRTHDAY, Severity.ERROR, birthdayMonthMessage));
+        }
+        // check if the day exists in the month
+        if (day < 1 || day > (validMonth ? daysInMonth(month, year) : 31)) {
+            problems.add(new Problem(ContactField.BIRTHDAY, Severity.ERROR, birthdayDayMessage));
+        }
+    }
+    private static boolean isFormattedNumber(String value, int start, int end) {
+        return end - start == 12 && value.charAt(start + 3) == '-' && value.charAt(start + 7) == '-'
+                && isDigits(value, start, start + 3) && isDigits(value, start + 4, start + 7)
+                && isDigits(value, start + 8, end);
+    }
+    private static boolean isDigits(String value, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static int number(String value, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            number = number * 10 + (value.charAt(i) - '0');
+        }
+        return number;
+    }
+    private static String filled(String value) {
+        return value == null || value.equals(notFilledIn) ? "" : value;
+    }
+    private static Result check(String phoneNumbers, String email, String birthday) {
+        List<Problem> problems = new ArrayList<>();
+        checkPhoneNumbers(phoneNumbers, problems);
+        checkEmail(email, problems);
+        checkBirthday(birthday, problems);
+        return problems.isEmpty() ? Result.valid : new Result(problems);
+    }
+    private static Result single(Consumer<List<Problem>> check) {
+        List<Problem> problems = new ArrayList<>(1);
+        check.accept(problems);
+        return problems.isEmpty() ? Result.valid : new Result(problems);
+    }
+}
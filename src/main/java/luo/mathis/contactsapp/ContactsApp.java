@@ -1,36 +1,93 @@
 package luo.mathis.contactsapp;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.BooleanBinding;
+import javafx.collections.ListChangeListener;
+import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Mathis Luo
  * Date: May 22, 2024
  */
 public class ContactsApp extends Application {
+    private static final System.Logger logger = System.getLogger(ContactsApp.class.getName());
 
     private static final String contactFilePath = "src/main/java/luo/mathis/contactsapp/ListOfContacts.csv";
-    private static final ObservableList<Contact> contacts = FXCollections.observableArrayList();
-    private static final Button addContactButton = new Button("Add Contact");
-    private static int commaCount = 0;
+    private static final String binaryFilePath = "src/main/java/luo/mathis/contactsapp/ListOfContacts.bin";
+    // keep contacts in the binary snapshot instead of the CSV file, converting the CSV on first start (-Dcontacts.binary=true)
+    private static final boolean binarySnapshots = Boolean.getBoolean("contacts.binary");
+    // record changes in a journal next to the file instead of rewriting the whole file (-Dcontacts.journal=false to disable)
+    private static final boolean journalMode = Boolean.parseBoolean(System.getProperty("contacts.journal", "true"));
+    private static final int journalCompactEvery = Integer.getInteger("contacts.journal.compactEvery", 1000);
+    private static final int persistenceQueueCapacity = Integer.getInteger("contacts.persistence.queue", 4096);
+    private static final int loadChunkSize = Integer.getInteger("contacts.load.chunkSize", 5000);
+    private static final int importChunkSize = Integer.getInteger("contacts.import.chunkSize", 10000);
+    // edits are saved together this long after the first unsaved one, or as soon as this many pile up
+    private static final long autosaveWindowMillis = Long.getLong("contacts.autosave.windowMillis", 250);
+    private static final int autosaveMaxEdits = Integer.getInteger("contacts.autosave.maxEdits", 500);
+    // browse the CSV file read-only a page of rows at a time instead of loading it, for files larger than the
+    // heap (-Dcontacts.paged=true), keeping at most cachePages pages of pageSize rows in memory
+    private static final boolean pagedMode = Boolean.getBoolean("contacts.paged");
+    private static final int pageSize = Integer.getInteger("contacts.paged.pageSize", 1000);
+    private static final int pageCacheSize = Integer.getInteger("contacts.paged.cachePages", 64);
+    // scroll through the table once loaded and log frame times (-Dcontacts.frameTimes=true)
+    private static final boolean frameTimeMode = Boolean.getBoolean("contacts.frameTimes");
+    // show a button opening the live timers and counters of ContactMetrics (-Dcontacts.diagnostics=true)
+    private static final boolean diagnosticsMode = Boolean.getBoolean("contacts.diagnostics");
+    private static final ContactValidator validator = new ContactValidator();
+    private final Button addContactButton = new Button("Add Contact");
+    private final Button importButton = new Button("Import...");
+    private final Button findDuplicatesButton = new Button("Find Duplicates");
+    private final Button deleteSelectedButton = new Button("Delete Selected");
+    private final Button editSelectedButton = new Button("Edit Selected...");
+    private final Button saveNowButton = new Button("Save Now");
+    private final Button birthdaysButton = new Button("Birthdays...");
+    private final Button diagnosticsButton = new Button("Diagnostics...");
+    private final Text saveStatus = new Text();
+    private final TextField searchField = new TextField();
+    private final TextField callerIdField = new TextField();
+    private final Text callerIdResult = new Text();
+    // the contacts, kept in the CSV file or the binary snapshot, changes are shown on the FX thread
+    private FileContactRepository repository;
+    // saves the edits made in a short window together, on its own thread
+    private AutosaveScheduler autosave;
+    // the rows of the CSV file in paged mode (no repository then)
+    private PagedContactList pagedContacts;
+    // when the oldest edit not shown in the table yet was committed (0 if there is none), and whether the
+    // table got a change since the last pulse
+    private long editCommittedNanos = 0;
+    private boolean changedSincePulse = false;
 
     public static void main(String[] args) {
         launch(args);
@@ -38,53 +95,72 @@ public class ContactsApp extends Application {
 
     @Override
     public void start(Stage primaryStage) {
+        // the timers and counters can be watched in JConsole or VisualVM
+        ContactMetrics.register();
+        if (pagedMode) {
+            startPaged(primaryStage);
+            return;
+        }
+        // the binary snapshot is used whenever it exists, otherwise the CSV file
+        Path binaryPath = Path.of(binaryFilePath);
+        Path snapshotPath = binarySnapshots || Files.exists(binaryPath) ? binaryPath : Path.of(contactFilePath);
+        // changes are appended to a journal next to the file, replayed once the file is loaded, and all
+        // writes run on the persistence thread
+        repository = new FileContactRepository(snapshotPath, journalMode, journalCompactEvery,
+                persistenceQueueCapacity, Platform::runLater);
+        repository.setOnFailed(e -> {
+            // already counted and logged by the persistence thread
+            saveStatus.setText("Saving failed");
+            showErrorAlert("Save Error", "Your changes could not be saved: " + e.getMessage());
+        });
+        autosave = new AutosaveScheduler(repository, autosaveWindowMillis, autosaveMaxEdits, Platform::runLater);
+        Tooltip autosaveStats = new Tooltip();
+        Tooltip.install(saveStatus, autosaveStats);
+        autosave.setOnUnsavedChanged(unsaved -> {
+            // the title shows a star while there are unsaved changes
+            primaryStage.setTitle(unsaved ? "Contacts App *" : "Contacts App");
+            saveStatus.setText(unsaved ? "Unsaved changes" : "All changes saved");
+            AutosaveScheduler.Stats stats = autosave.getStats();
+            autosaveStats.setText(String.format("%d saves, %d of %d edits saved together, last save %d ms, slowest %d ms",
+                    stats.flushes(), stats.coalescedEdits(), stats.edits(), stats.lastFlushMillis(), stats.maxFlushMillis()));
+        });
+        // make sure queued saves are written even if the app exits without stop()
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnExit, "contacts-flush-on-exit"));
+
         Pane mainLayout = new Pane();
         TableView<Contact> tableView = new TableView<>();
         // allow the table to be editable with double click
         tableView.setEditable(true);
+        // several rows can be selected (shift/ctrl click) and deleted or edited together
+        tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         // name column
         TableColumn<Contact, String> nameCol = new TableColumn<>("Name");
-        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setCellValueFactory(cellData -> cellData.getValue().nameProperty());
         nameCol.setCellFactory(TextFieldTableCell.forTableColumn());
         // when the name is edited, update the contact's name
         nameCol.setOnEditCommit(event -> {
             Contact contact = event.getRowValue();
             String newName = event.getNewValue();
-            // check if the new name contains a comma
-            if (newName != null && newName.contains(",")) {
-                dontYouDarePutCommasInHere();
-                // do not update the contact's name and refresh the table to discard the change
-                nameCol.getTableView().refresh();
+            if (newName == null || newName.trim().isEmpty()) {
+                // if the new name is empty, fill it with "Not Filled In"
+                repository.update(contact, ContactField.NAME, "Not Filled In");
             } else {
-                if (newName == null || newName.trim().isEmpty()) {
-                    // if the new name is empty, fill it with "Not Filled In"
-                    contact.setName("Not Filled In");
-                } else {
-                    // set the new name
-                    contact.setName(newName);
-                }
-                // write the changes to the file and refresh the table
-                forceWriteToCSV(contacts);
-                refreshTable();
+                // set the new name
+                repository.update(contact, ContactField.NAME, newName);
             }
+            // write the changes to the file
+            saveChanges();
         });
         // phone numbers column
         TableColumn<Contact, String> phoneNumbersCol = new TableColumn<>("Phone Number(s)");
-        phoneNumbersCol.setCellValueFactory(cellData -> {
-            Contact contact = cellData.getValue();
-            String phoneNumbers = contact.getPhoneNumbers();
-            // if the phone numbers contain a semicolon, replace it with a comma (this is for multiple phone numbers)
-            if (phoneNumbers.contains(";")) {
-                return new SimpleStringProperty(phoneNumbers.replace(";", ","));
-            } else {
-                return new SimpleStringProperty(phoneNumbers);
-            }
-        });
+        // multiple phone numbers are shown separated by commas instead of semicolons
+        phoneNumbersCol.setCellValueFactory(cellData -> cellData.getValue().phoneNumbersDisplayProperty());
         phoneNumbersCol.setCellFactory(TextFieldTableCell.forTableColumn());
         // when the phone numbers are edited, update the contact's phone numbers
         phoneNumbersCol.setOnEditCommit(event -> {
             Contact contact = event.getRowValue();
-            String newValue = event.getNewValue();
+            // the cell shows multiple numbers separated by commas, store them separated by semicolons again
+            String newValue = event.getNewValue() == null ? null : event.getNewValue().replace(',', ';');
             // validate the new value
             String errorMessage = validatePhoneNumberInput(newValue);
             // if there error messages
@@ -96,146 +172,81 @@ public class ContactsApp extends Application {
                 // update the contact's phone numbers
                 if (newValue == null || newValue.trim().isEmpty()) {
                     // if the new value is empty, fill it with "Not Filled In"
-                    contact.setPhoneNumbers("Not Filled In");
+                    repository.update(contact, ContactField.PHONE_NUMBERS, "Not Filled In");
                 } else {
                     // update the contact's phone numbers
-                    contact.setPhoneNumbers(newValue);
+                    repository.update(contact, ContactField.PHONE_NUMBERS, newValue);
                 }
-                forceWriteToCSV(contacts); // write changes to file
-                refreshTable(); // update the table
+                saveChanges(); // write changes to file
             }
         });
         // email column
         TableColumn<Contact, String> emailCol = new TableColumn<>("Email");
-        emailCol.setCellValueFactory(new PropertyValueFactory<>("email"));
+        emailCol.setCellValueFactory(cellData -> cellData.getValue().emailProperty());
         emailCol.setCellFactory(TextFieldTableCell.forTableColumn());
         emailCol.setOnEditCommit(event -> {
             Contact contact = event.getRowValue();
             String newValue = event.getNewValue();
-            // check if the new value contains a comma or space
-            if (newValue != null && (newValue.contains(",") || newValue.contains(" "))) {
-                showErrorAlert("Invalid Email Address", "Email addresses cannot contain commas or spaces.");
-                // do not update the contact's email
-                emailCol.getTableView().refresh(); // refresh the table to discard the change
+            if (newValue == null || newValue.trim().isEmpty()) {
+                // if the new value is empty, fill it with "Not Filled In"
+                repository.update(contact, ContactField.EMAIL, "Not Filled In");
             } else {
-                if (newValue == null || newValue.trim().isEmpty()) {
-                    // if the new value is empty, fill it with "Not Filled In"
-                    contact.setEmail("Not Filled In");
+                // if it is a valid email address (no spaces or commas either)
+                if (validator.validateEmail(newValue).isValid()) {
+                    // update the contact's email
+                    repository.update(contact, ContactField.EMAIL, newValue);
                 } else {
-                    // if it is a valid email address
-                    if (newValue.matches(".+@.+\\..+")) {
-                        // update the contact's email
-                        contact.setEmail(newValue);
-                    } else {
-                        // show error alert
-                        showErrorAlert("Invalid Email Address", "Please enter a valid email address.");
-                        // refresh the table to discard the change
-                        refreshTable();
-                    }
+                    // show error alert
+                    showErrorAlert("Invalid Email Address", "Please enter a valid email address.");
+                    // refresh the table to discard the change
+                    emailCol.getTableView().refresh();
+                    return;
                 }
-                // write changes to file and refresh the table
-                forceWriteToCSV(contacts);
-                refreshTable();
             }
+            // write changes to file
+            saveChanges();
         });
         // address column
         TableColumn<Contact, String> addressCol = new TableColumn<>("Address");
-        addressCol.setCellValueFactory(new PropertyValueFactory<>("address"));
+        addressCol.setCellValueFactory(cellData -> cellData.getValue().addressProperty());
         addressCol.setCellFactory(TextFieldTableCell.forTableColumn());
         addressCol.setOnEditCommit(event -> {
             Contact contact = event.getRowValue();
             String newValue = event.getNewValue();
-            // check if the new value contains a comma
-            if (newValue != null && newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                // do not update the contact's address
-                addressCol.getTableView().refresh(); // refresh the table to discard the change
+            if (newValue == null || newValue.trim().isEmpty()) {
+                // if the new value is empty, fill it with "Not Filled In"
+                repository.update(contact, ContactField.ADDRESS, "Not Filled In");
             } else {
-                if (newValue == null || newValue.trim().isEmpty()) {
-                    // if the new value is empty, fill it with "Not Filled In"
-                    contact.setAddress("Not Filled In");
-                } else {
-                    // update the contact's address
-                    contact.setAddress(newValue);
-                }
-                // write changes to file and refresh the table
-                forceWriteToCSV(contacts);
-                refreshTable();
+                // update the contact's address
+                repository.update(contact, ContactField.ADDRESS, newValue);
             }
+            // write changes to file
+            saveChanges();
         });
         // birthday column
         TableColumn<Contact, String> birthdayCol = new TableColumn<>("Birthday");
-        birthdayCol.setCellValueFactory(new PropertyValueFactory<>("birthday"));
+        birthdayCol.setCellValueFactory(cellData -> cellData.getValue().birthdayProperty());
         birthdayCol.setCellFactory(TextFieldTableCell.forTableColumn());
         birthdayCol.setOnEditCommit(event -> {
             Contact contact = event.getRowValue();
             String newValue = event.getNewValue();
-            // check if the new value contains a comma
-            if (newValue != null && newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                // do not update the contact's birthday
-                birthdayCol.getTableView().refresh(); // refresh the table to discard the change
+            if (newValue == null || newValue.trim().isEmpty()) {
+                // if the new value is empty, fill it with "Not Filled In"
+                repository.update(contact, ContactField.BIRTHDAY, "Not Filled In");
             } else {
-                if (newValue == null || newValue.trim().isEmpty()) {
-                    // if the new value is empty, fill it with "Not Filled In"
-                    contact.setBirthday("Not Filled In");
-                } else {
-                    // if the new value is a valid birthday format
-                    if (newValue.matches("\\d{2}/\\d{2}/\\d{4}")) {
-                        // validate the day and month
-                        String[] parts = newValue.split("/");
-                        int day = Integer.parseInt(parts[0]);
-                        int month = Integer.parseInt(parts[1]);
-                        int year = Integer.parseInt(parts[2]);
-                        if (month < 1 || month > 12) {
-                            // invalid month
-                            showErrorAlert("Invalid Birthday", "Invalid month in birthday");
-                            birthdayCol.getTableView().refresh();
-                            return;
-                        }
-                        // check if the day exists in the month
-                        if (month == 2 & !isLeapYear(year)) {
-                            if (day < 1 || day > 28) {
-                                // invalid day
-                                showErrorAlert("Invalid Birthday", "Invalid day in birthday");
-                                birthdayCol.getTableView().refresh();
-                                return;
-                            }
-                        } else if (month == 2 & isLeapYear(year)) {
-                            if (day < 1 || day > 29) {
-                                // invalid day
-                                showErrorAlert("Invalid Birthday", "Invalid day in birthday");
-                                birthdayCol.getTableView().refresh();
-                                return;
-                            }
-                        } else if (month == 4 || month == 6 || month == 9 || month == 11) {
-                            if (day < 1 || day > 30) {
-                                // invalid day
-                                showErrorAlert("Invalid Birthday", "Invalid day in birthday");
-                                birthdayCol.getTableView().refresh();
-                                return;
-                            }
-                        } else {
-                            if (day < 1 || day > 31) {
-                                // invalid day
-                                showErrorAlert("Invalid Birthday", "Invalid day in birthday");
-                                birthdayCol.getTableView().refresh();
-                                return;
-                            }
-                        }
-                        // update the contact's birthday
-                        contact.setBirthday(newValue);
-                    } else {
-                        // show error alert and refresh the table to discard the change
-                        showErrorAlert("Invalid Birthday", "Birthday format should be DD/MM/YYYY.");
-                        birthdayCol.getTableView().refresh();
-                        return;
-                    }
+                // check the format and that the day exists in the month
+                String error = validator.validateBirthday(newValue).firstError();
+                if (error != null) {
+                    // show error alert and refresh the table to discard the change
+                    showErrorAlert("Invalid Birthday", error);
+                    birthdayCol.getTableView().refresh();
+                    return;
                 }
-                // write changes to file and refresh the table
-                forceWriteToCSV(contacts);
-                refreshTable();
+                // update the contact's birthday
+                repository.update(contact, ContactField.BIRTHDAY, newValue);
             }
+            // write changes to file
+            saveChanges();
         });
 
         // delete column
@@ -245,6 +256,8 @@ public class ContactsApp extends Application {
             final Button deleteButton = new Button("Delete");
             {
                 deleteButton.setStyle("-fx-background-color: #8B0000; -fx-text-fill: white;"); // Deep red background color with white text
+                // no deleting while the contacts are loading or duplicates are being looked for
+                deleteButton.disableProperty().bind(tableView.editableProperty().not());
             }
             @Override
             protected void updateItem(Void item, boolean empty) {
@@ -260,9 +273,8 @@ public class ContactsApp extends Application {
                     setText(null); // make sure text is null if using graphic
                     deleteButton.setOnAction(event -> {
                         Contact contact = getTableView().getItems().get(getIndex());
-                        contacts.remove(contact); // remove the contact from the list
-                        forceWriteToCSV(contacts); // write the updated list back to the CSV file
-                        refreshTable(); // update the table after deleting
+                        repository.remove(contact); // remove the contact from the list (only this row changes)
+                        saveChanges(); // write the updated list back to the CSV file
                     });
                     // style the cell only if it is the current index (has a delete button)
                     if (getIndex() == getIndex()) {
@@ -282,13 +294,44 @@ public class ContactsApp extends Application {
         // add the columns to the table view
         tableView.getColumns().addAll(nameCol, phoneNumbersCol, emailCol, addressCol, birthdayCol, deleteColumn);
 
-        // set the items in the table view
-        tableView.setItems(contacts);
+        // set the items in the table view, filtered by the search box and sorted by the clicked columns
+        FilteredList<Contact> filteredContacts = new FilteredList<>(repository.findAll());
+        ContactSortedList sortedContacts = new ContactSortedList(filteredContacts);
+        tableView.setItems(sortedContacts);
+        // sort by the typed keys of the clicked columns instead of comparing the cell text
+        Map<TableColumn<Contact, ?>, ContactField> sortFields = Map.of(nameCol, ContactField.NAME,
+                phoneNumbersCol, ContactField.PHONE_NUMBERS, emailCol, ContactField.EMAIL,
+                addressCol, ContactField.ADDRESS, birthdayCol, ContactField.BIRTHDAY);
+        deleteColumn.setSortable(false);
+        tableView.setSortPolicy(table -> {
+            List<ContactSortKeys.SortColumn> order = new ArrayList<>();
+            for (TableColumn<Contact, ?> column : table.getSortOrder()) {
+                order.add(new ContactSortKeys.SortColumn(sortFields.get(column),
+                        column.getSortType() == TableColumn.SortType.ASCENDING));
+            }
+            sortedContacts.setSortOrder(order);
+            return true;
+        });
+        searchField.setPromptText("Search contacts");
+        searchField.textProperty().addListener((observable, oldValue, newValue) ->
+                filteredContacts.setPredicate(repository.matcher(newValue)));
+        // who a phone number belongs to, looked up in the phone number index on every keystroke
+        callerIdField.setPromptText("Caller ID: phone number");
+        callerIdField.textProperty().addListener((observable, oldValue, newValue) ->
+                callerIdResult.setText(newValue.isBlank() ? "" : describeCaller(repository.findByPhoneNumber(newValue))));
+        // enter selects the (first) contact with that number in the table
+        callerIdField.setOnAction(e -> {
+            List<Contact> callers = repository.findByPhoneNumber(callerIdField.getText());
+            int row = callers.isEmpty() ? -1 : tableView.getItems().indexOf(callers.get(0));
+            if (row >= 0) {
+                tableView.getSelectionModel().clearAndSelect(row);
+                tableView.scrollTo(row);
+            }
+        });
+        repository.findByPhoneNumber(""); // build the phone number index now too
         // don't let the user resize the columns
         tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
 
-        readFromFile(); // load contacts from file
-
         // create a vertical box to hold the table view
         VBox root = new VBox(tableView);
         mainLayout.getChildren().addAll(root);
@@ -298,15 +341,589 @@ public class ContactsApp extends Application {
         addContactButton.setLayoutY(500);
         mainLayout.getChildren().add(addContactButton);
         addContactButton.setOnAction(e -> showAddContactWindow());
+        // add the import button
+        importButton.setLayoutX(805);
+        importButton.setLayoutY(500);
+        mainLayout.getChildren().add(importButton);
+        importButton.setOnAction(e -> importContacts(primaryStage));
+        // add the find duplicates button
+        findDuplicatesButton.setLayoutX(320);
+        findDuplicatesButton.setLayoutY(500);
+        mainLayout.getChildren().add(findDuplicatesButton);
+        findDuplicatesButton.setOnAction(e -> findDuplicates(tableView));
+        // add the buttons for the selected rows, usable while the table is editable and something is selected
+        BooleanBinding nothingSelected = Bindings.isEmpty(tableView.getSelectionModel().getSelectedItems())
+                .or(tableView.editableProperty().not());
+        deleteSelectedButton.setLayoutX(320);
+        deleteSelectedButton.setLayoutY(540);
+        deleteSelectedButton.disableProperty().bind(nothingSelected);
+        mainLayout.getChildren().add(deleteSelectedButton);
+        deleteSelectedButton.setOnAction(e -> deleteSelected(tableView));
+        editSelectedButton.setLayoutX(440);
+        editSelectedButton.setLayoutY(540);
+        editSelectedButton.disableProperty().bind(nothingSelected);
+        mainLayout.getChildren().add(editSelectedButton);
+        editSelectedButton.setOnAction(e -> showEditSelectedWindow(tableView));
+        // add the save now button, which saves without waiting for the autosave
+        saveNowButton.setLayoutX(560);
+        saveNowButton.setLayoutY(540);
+        mainLayout.getChildren().add(saveNowButton);
+        saveNowButton.setOnAction(e -> autosave.saveNow());
+        // add the upcoming birthdays button
+        birthdaysButton.setLayoutX(660);
+        birthdaysButton.setLayoutY(540);
+        mainLayout.getChildren().add(birthdaysButton);
+        birthdaysButton.setOnAction(e -> showBirthdaysWindow());
+        // add the diagnostics button
+        if (diagnosticsMode) {
+            diagnosticsButton.setLayoutX(760);
+            diagnosticsButton.setLayoutY(540);
+            mainLayout.getChildren().add(diagnosticsButton);
+            diagnosticsButton.setOnAction(e -> showDiagnosticsWindow());
+        }
+        // add the search box
+        searchField.setLayoutX(440);
+        searchField.setLayoutY(500);
+        searchField.setPrefWidth(240);
+        mainLayout.getChildren().add(searchField);
+        // add the caller ID box
+        callerIdField.setLayoutX(20);
+        callerIdField.setLayoutY(540);
+        callerIdField.setPrefWidth(180);
+        mainLayout.getChildren().add(callerIdField);
+        callerIdResult.setLayoutX(20);
+        callerIdResult.setLayoutY(585);
+        mainLayout.getChildren().add(callerIdResult);
+        // show whether the last save went through
+        saveStatus.setLayoutX(20);
+        saveStatus.setLayoutY(517);
+        mainLayout.getChildren().add(saveStatus);
 
         // set colours for the layout and table view
         mainLayout.setStyle("-fx-background-color: rgba(144, 238, 144, 0.2);");
         tableView.setStyle("-fx-background-color: skyblue;");
 
-        primaryStage.setScene(new Scene(mainLayout, 930, 600));
+        Scene scene = new Scene(mainLayout, 930, 600);
+        // an edit is visible once the layout pulse after the table got the change is done
+        repository.addListener((ListChangeListener<Contact>) change -> changedSincePulse = true);
+        scene.addPostLayoutPulseListener(() -> {
+            if (editCommittedNanos != 0 && changedSincePulse) {
+                ContactMetrics.editToVisible.record(System.nanoTime() - editCommittedNanos);
+                editCommittedNanos = 0;
+            }
+            changedSincePulse = false;
+        });
+        primaryStage.setScene(scene);
         primaryStage.setResizable(false);
         primaryStage.setTitle("Contacts App");
+        // save everything before the window goes away
+        primaryStage.setOnCloseRequest(e -> flushOnExit());
         primaryStage.show();
+
+        loadContacts(tableView); // load contacts from file after the window is up
+    }
+    /**
+     * Shows the CSV file read-only: the table reads the rows it shows from the file through the page cache and
+     * nothing else is loaded. Changes still in the journal are not shown, they stay there for the next normal
+     * start.
+     */
+    private void startPaged(Stage primaryStage) {
+        Pane mainLayout = new Pane();
+        TableView<Contact> tableView = new TableView<>();
+        TableColumn<Contact, String> nameCol = pagedColumn("Name", 150);
+        nameCol.setCellValueFactory(cellData -> cellData.getValue().nameProperty());
+        TableColumn<Contact, String> phoneNumbersCol = pagedColumn("Phone Number(s)", 150);
+        phoneNumbersCol.setCellValueFactory(cellData -> cellData.getValue().phoneNumbersDisplayProperty());
+        TableColumn<Contact, String> emailCol = pagedColumn("Email", 200);
+        emailCol.setCellValueFactory(cellData -> cellData.getValue().emailProperty());
+        TableColumn<Contact, String> addressCol = pagedColumn("Address", 250);
+        addressCol.setCellValueFactory(cellData -> cellData.getValue().addressProperty());
+        TableColumn<Contact, String> birthdayCol = pagedColumn("Birthday", 100);
+        birthdayCol.setCellValueFactory(cellData -> cellData.getValue().birthdayProperty());
+        tableView.getColumns().addAll(nameCol, phoneNumbersCol, emailCol, addressCol, birthdayCol);
+        tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        tableView.setPrefWidth(930);
+        mainLayout.getChildren().add(new VBox(tableView));
+
+        // the page cache counters, when hovering over the status
+        Tooltip cacheStats = new Tooltip();
+        cacheStats.setOnShowing(e -> {
+            if (pagedContacts != null) {
+                PagedContactList.Stats stats = pagedContacts.getStats();
+                cacheStats.setText(String.format("%d of %d pages cached, %.1f%% hits, last page read in %d us",
+                        stats.cachedPages(), pageCacheSize, stats.hitRate() * 100, stats.lastLoadMicros()));
+            }
+        });
+        Tooltip.install(saveStatus, cacheStats);
+        saveStatus.setLayoutX(20);
+        saveStatus.setLayoutY(517);
+        saveStatus.setText("Indexing contacts...");
+        mainLayout.getChildren().add(saveStatus);
+        mainLayout.setStyle("-fx-background-color: rgba(144, 238, 144, 0.2);");
+        tableView.setStyle("-fx-background-color: skyblue;");
+
+        primaryStage.setScene(new Scene(mainLayout, 930, 600));
+        primaryStage.setResizable(false);
+        primaryStage.setTitle("Contacts App (read only)");
+        primaryStage.setOnCloseRequest(e -> closePaged());
+        primaryStage.show();
+
+        // the row index is built on the first start (or after the file changed), then just mapped
+        Thread indexThread = new Thread(() -> {
+            try {
+                PagedContactList contacts = new PagedContactList(CsvRowIndex.open(Path.of(contactFilePath)),
+                        pageSize, pageCacheSize);
+                Platform.runLater(() -> {
+                    pagedContacts = contacts;
+                    tableView.setItems(contacts);
+                    saveStatus.setText(contacts.size() + " contacts (read only)");
+                });
+            } catch (IOException e) {
+                ContactMetrics.failed("load " + contactFilePath, e);
+                Platform.runLater(() -> {
+                    saveStatus.setText("Loading failed");
+                    showErrorAlert("Load Error", "Your contacts could not be loaded: " + e.getMessage());
+                });
+            }
+        }, "contacts-indexer");
+        indexThread.setDaemon(true);
+        indexThread.start();
+    }
+    /**
+     * Creates a read-only, unsortable column for paged mode (sorting would need every row)
+     */
+    private static TableColumn<Contact, String> pagedColumn(String title, double minWidth) {
+        TableColumn<Contact, String> column = new TableColumn<>(title);
+        column.setMinWidth(minWidth);
+        column.setSortable(false);
+        return column;
+    }
+    private void closePaged() {
+        if (pagedContacts != null) {
+            try {
+                pagedContacts.close();
+            } catch (IOException e) {
+                ContactMetrics.failed("close " + contactFilePath, e);
+            }
+        }
+    }
+    /**
+     * Loads the contacts on a background thread, adding them to the table chunk by chunk, then replays the
+     * journal. Editing stays off until everything is loaded.
+     */
+    private void loadContacts(TableView<Contact> tableView) {
+        tableView.setEditable(false);
+        addContactButton.setDisable(true);
+        importButton.setDisable(true);
+        findDuplicatesButton.setDisable(true);
+        saveStatus.setText("Loading contacts...");
+        Path snapshotPath = repository.getSnapshotPath();
+        Thread loaderThread = new Thread(() -> {
+            try {
+                Path csvPath = Path.of(contactFilePath);
+                if (!Files.exists(snapshotPath) && !snapshotPath.equals(csvPath) && Files.exists(csvPath)) {
+                    // first start with the binary snapshot, convert the CSV file (and its journal) once
+                    Platform.runLater(() -> saveStatus.setText("Converting contacts..."));
+                    ContactSnapshot.convert(csvPath, snapshotPath);
+                }
+                repository.load(loadChunkSize, loaded -> saveStatus.setText("Loading contacts... " + loaded));
+                // runs after the last chunk and the journal are in
+                Platform.runLater(() -> {
+                    tableView.setEditable(true);
+                    addContactButton.setDisable(false);
+                    importButton.setDisable(false);
+                    findDuplicatesButton.setDisable(false);
+                    saveStatus.setText(repository.size() + " contacts loaded");
+                    if (frameTimeMode) {
+                        measureScrolling(tableView);
+                    }
+                });
+            } catch (IOException e) {
+                ContactMetrics.failed("load " + snapshotPath, e);
+                Platform.runLater(() -> {
+                    saveStatus.setText("Loading failed");
+                    showErrorAlert("Load Error", "Your contacts could not be loaded: " + e.getMessage());
+                });
+            }
+        }, "contacts-loader");
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
+    /**
+     * Scrolls through the whole table in 600 frames, twice, and logs the frame times of both passes, showing
+     * those of the second in the status label (the first pass creates the properties of every row)
+     */
+    private void measureScrolling(TableView<Contact> tableView) {
+        int frames = 600;
+        int rows = tableView.getItems().size();
+        int step = Math.max(1, rows / frames);
+        int[] row = {0};
+        Runnable scroll = () -> {
+            tableView.scrollTo(row[0]);
+            row[0] = (row[0] + step) % Math.max(1, rows);
+        };
+        new FrameTimeMonitor(frames, scroll, firstPass -> {
+            logger.log(System.Logger.Level.INFO, "Scrolling, first pass: " + firstPass);
+            saveStatus.setText("Scrolling again...");
+            row[0] = 0;
+            new FrameTimeMonitor(frames, scroll, secondPass -> {
+                logger.log(System.Logger.Level.INFO, "Scrolling, second pass: " + secondPass);
+                saveStatus.setText("Scrolling: " + secondPass);
+            }).start();
+        }).start();
+    }
+    /**
+     * Lets the user pick a CSV file and imports it on a background thread. All valid rows are added to the
+     * table at once and saved as one write.
+     */
+    private void importContacts(Stage owner) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Contacts");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV files", "*.csv", "*.txt"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = fileChooser.showOpenDialog(owner);
+        if (file == null) {
+            return;
+        }
+        importButton.setDisable(true);
+        saveStatus.setText("Importing...");
+        BulkImporter importer = new BulkImporter(ForkJoinPool.commonPool(), importChunkSize);
+        Thread importThread = new Thread(() -> {
+            try {
+                BulkImporter.Result result = importer.read(file.toPath(), ContactCsv.delimiter, progress ->
+                        Platform.runLater(() -> saveStatus.setText(String.format("Importing... %d rows (%.0f rows/s)",
+                                progress.rowsRead(), progress.rowsPerSecond()))));
+                Platform.runLater(() -> {
+                    repository.addAll(result.contacts()); // one change event, one journal write
+                    saveChanges();
+                    importButton.setDisable(false);
+                    saveStatus.setText(result.contacts().size() + " contacts imported");
+                    showImportSummary(result);
+                });
+            } catch (IOException e) {
+                ContactMetrics.failed("import " + file, e);
+                Platform.runLater(() -> {
+                    importButton.setDisable(false);
+                    saveStatus.setText("Import failed");
+                    showErrorAlert("Import Error", "The file could not be imported: " + e.getMessage());
+                });
+            }
+        }, "contacts-importer");
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+    /**
+     * Looks for duplicates on a background thread, then shows them in the duplicates window. Editing is off
+     * while it runs, the groups refer to the contacts as they were when it started.
+     */
+    private void findDuplicates(TableView<Contact> tableView) {
+        tableView.setEditable(false);
+        addContactButton.setDisable(true);
+        importButton.setDisable(true);
+        findDuplicatesButton.setDisable(true);
+        saveStatus.setText("Finding duplicates...");
+        Thread finderThread = new Thread(() -> {
+            long start = System.nanoTime();
+            List<DuplicateFinder.Group> groups = repository.findDuplicates(); // reads a snapshot of the store
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            Platform.runLater(() -> {
+                saveStatus.setText(groups.size() + " groups of duplicates found in " + millis + " ms");
+                if (!groups.isEmpty()) {
+                    showDuplicatesWindow(groups);
+                }
+                tableView.setEditable(true);
+                addContactButton.setDisable(false);
+                importButton.setDisable(false);
+                findDuplicatesButton.setDisable(false);
+            });
+        }, "contacts-duplicate-finder");
+        finderThread.setDaemon(true);
+        finderThread.start();
+    }
+    /**
+     * Displays the groups of duplicates. Merging keeps the first contact of a group, fills in what it is
+     * missing from the others and removes them, then saves once.
+     */
+    private void showDuplicatesWindow(List<DuplicateFinder.Group> groups) {
+        Stage duplicatesStage = new Stage();
+        duplicatesStage.initModality(Modality.APPLICATION_MODAL);
+        duplicatesStage.setTitle("Duplicates");
+
+        ListView<DuplicateFinder.Group> groupList = new ListView<>();
+        groupList.getItems().setAll(groups);
+        groupList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        groupList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(DuplicateFinder.Group group, boolean empty) {
+                super.updateItem(group, empty);
+                if (empty || group == null) {
+                    setText(null);
+                    return;
+                }
+                StringBuilder text = new StringBuilder(String.format("%d contacts, score %.2f", group.contacts().size(), group.score()));
+                for (Contact contact : group.contacts()) {
+                    text.append("\n    ").append(contact.getName())
+                            .append(" | ").append(contact.getEmail())
+                            .append(" | ").append(contact.getPhoneNumbers().replace(";", ", "))
+                            .append(" | ").append(contact.getBirthday());
+                }
+                setText(text.toString());
+            }
+        });
+
+        // merge the selected groups, or all of them, with one change event and one save
+        Button mergeButton = new Button("Merge Selected");
+        mergeButton.disableProperty().bind(groupList.getSelectionModel().selectedItemProperty().isNull());
+        mergeButton.setOnAction(e -> {
+            List<DuplicateFinder.Group> selected = new ArrayList<>(groupList.getSelectionModel().getSelectedItems());
+            repository.mergeDuplicates(selected);
+            saveChanges();
+            groupList.getItems().removeAll(selected);
+            saveStatus.setText(selected.size() + " groups merged");
+        });
+        Button mergeAllButton = new Button("Merge All");
+        mergeAllButton.setOnAction(e -> {
+            List<DuplicateFinder.Group> all = new ArrayList<>(groupList.getItems());
+            repository.mergeDuplicates(all);
+            saveChanges();
+            saveStatus.setText(all.size() + " groups merged");
+            duplicatesStage.close();
+        });
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> duplicatesStage.close());
+
+        HBox buttons = new HBox(10, closeButton, mergeButton, mergeAllButton);
+        VBox layout = new VBox(10, groupList, buttons);
+        layout.setPadding(new Insets(20));
+        VBox.setVgrow(groupList, Priority.ALWAYS);
+
+        duplicatesStage.setScene(new Scene(layout, 700, 500));
+        duplicatesStage.showAndWait();
+    }
+    /**
+     * Returns the caller ID text for the contacts found for a phone number
+     */
+    private static String describeCaller(List<Contact> callers) {
+        if (callers.isEmpty()) {
+            return "Unknown number";
+        }
+        String name = callers.get(0).getName();
+        return callers.size() == 1 ? name : name + " and " + (callers.size() - 1) + " more";
+    }
+    /**
+     * Displays the birthdays of the next days (30 unless changed), which stay up to date with the contacts
+     * while the window is open
+     */
+    private void showBirthdaysWindow() {
+        Stage birthdaysStage = new Stage();
+        birthdaysStage.setTitle("Upcoming Birthdays");
+
+        Spinner<Integer> daysSpinner = new Spinner<>(1, 366, 30);
+        daysSpinner.setEditable(true);
+        ListView<BirthdayIndex.Upcoming> birthdayList = new ListView<>();
+        DateTimeFormatter dayFormat = DateTimeFormatter.ofPattern("EEE dd/MM");
+        birthdayList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(BirthdayIndex.Upcoming upcoming, boolean empty) {
+                super.updateItem(upcoming, empty);
+                if (empty || upcoming == null) {
+                    setText(null);
+                    return;
+                }
+                setText(upcoming.date().format(dayFormat) + "    " + upcoming.contact().getName()
+                        + " turns " + upcoming.age());
+            }
+        });
+        Text summary = new Text();
+        // looked up in the birthday index, which follows every change to the contacts
+        Runnable refresh = () -> {
+            LocalDate today = LocalDate.now();
+            List<BirthdayIndex.Upcoming> upcoming = repository.upcomingBirthdays(today, daysSpinner.getValue());
+            birthdayList.getItems().setAll(upcoming);
+            summary.setText(upcoming.size() + " birthdays in the next " + daysSpinner.getValue() + " days");
+        };
+        daysSpinner.valueProperty().addListener((observable, oldValue, newValue) -> refresh.run());
+        // refreshed once after a burst of changes, and after the index has seen them
+        boolean[] refreshPending = {false};
+        ListChangeListener<Contact> onChanged = change -> {
+            if (!refreshPending[0]) {
+                refreshPending[0] = true;
+                Platform.runLater(() -> {
+                    refreshPending[0] = false;
+                    refresh.run();
+                });
+            }
+        };
+        repository.addListener(onChanged);
+        birthdaysStage.setOnHidden(e -> repository.removeListener(onChanged));
+        refresh.run();
+
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> birthdaysStage.close());
+        HBox controls = new HBox(10, new Label("Days:"), daysSpinner, summary);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        VBox layout = new VBox(10, controls, birthdayList, closeButton);
+        layout.setPadding(new Insets(20));
+        VBox.setVgrow(birthdayList, Priority.ALWAYS);
+
+        birthdaysStage.setScene(new Scene(layout, 450, 500));
+        birthdaysStage.show();
+    }
+    /**
+     * Displays the timers and counters of ContactMetrics, refreshed every second while the window is open
+     */
+    private void showDiagnosticsWindow() {
+        Stage diagnosticsStage = new Stage();
+        diagnosticsStage.setTitle("Diagnostics");
+
+        TextArea report = new TextArea();
+        report.setEditable(false);
+        report.setFont(Font.font("Monospaced", 12));
+        Runnable refresh = () -> {
+            StringBuilder text = new StringBuilder();
+            ContactMetrics.getTimerStats().forEach((name, stats) ->
+                    text.append(String.format("%-14s %s%n", name, stats)));
+            text.append(String.format("%nrows read %d, written %d%nbytes read %d, written %d%nerrors %d%n",
+                    ContactMetrics.rowsRead.sum(), ContactMetrics.rowsWritten.sum(), ContactMetrics.bytesRead.sum(),
+                    ContactMetrics.bytesWritten.sum(), ContactMetrics.errors.sum()));
+            if (!ContactMetrics.getLastError().isEmpty()) {
+                text.append("last error: ").append(ContactMetrics.getLastError()).append("\n");
+            }
+            report.setText(text.toString());
+        };
+        Timeline refresher = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh.run()));
+        refresher.setCycleCount(Timeline.INDEFINITE);
+        refresher.play();
+        diagnosticsStage.setOnHidden(e -> refresher.stop());
+        refresh.run();
+
+        Button resetButton = new Button("Reset");
+        resetButton.setOnAction(e -> {
+            ContactMetrics.reset();
+            refresh.run();
+        });
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> diagnosticsStage.close());
+        VBox layout = new VBox(10, report, new HBox(10, resetButton, closeButton));
+        layout.setPadding(new Insets(20));
+        VBox.setVgrow(report, Priority.ALWAYS);
+
+        diagnosticsStage.setScene(new Scene(layout, 760, 420));
+        diagnosticsStage.show();
+    }
+    /**
+     * Shows how many rows were imported and the first few rejected ones
+     */
+    private void showImportSummary(BulkImporter.Result result) {
+        StringBuilder message = new StringBuilder(result.toString());
+        List<BulkImporter.Rejected> rejected = result.rejected();
+        for (int i = 0; i < Math.min(10, rejected.size()); i++) {
+            message.append("\n\nRow ").append(rejected.get(i).row()).append(":\n").append(rejected.get(i).message().trim());
+        }
+        if (rejected.size() > 10) {
+            message.append("\n\n... and ").append(rejected.size() - 10).append(" more rejected rows");
+        }
+        Alert alert = new Alert(rejected.isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+        alert.setTitle("Import Finished");
+        alert.setHeaderText(null);
+        alert.setContentText(message.toString());
+        alert.showAndWait();
+    }
+    @Override
+    public void stop() {
+        flushOnExit();
+        closePaged();
+    }
+    /**
+     * Saves the changes the autosave has not saved yet, writes all queued saves and closes the journal (safe
+     * to call more than once)
+     */
+    private void flushOnExit() {
+        if (autosave != null) {
+            autosave.close();
+        }
+        if (repository != null) {
+            try {
+                repository.close();
+            } catch (IOException e) {
+                ContactMetrics.failed("close " + repository.getSnapshotPath(), e);
+            }
+        }
+    }
+    /**
+     * Deletes the selected contacts after asking, as one change (one change event and one save)
+     */
+    private void deleteSelected(TableView<Contact> tableView) {
+        List<Contact> selected = new ArrayList<>(tableView.getSelectionModel().getSelectedItems());
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Delete Contacts");
+        alert.setHeaderText(null);
+        alert.setContentText("Delete the " + selected.size() + " selected contact(s)?");
+        if (alert.showAndWait().filter(ButtonType.OK::equals).isEmpty()) {
+            return;
+        }
+        tableView.getSelectionModel().clearSelection();
+        repository.removeAll(selected);
+        saveChanges();
+        saveStatus.setText(selected.size() + " contacts deleted");
+    }
+    /**
+     * Displays a window setting one field of all selected contacts to the same value, applied as one change
+     */
+    private void showEditSelectedWindow(TableView<Contact> tableView) {
+        List<Contact> selected = new ArrayList<>(tableView.getSelectionModel().getSelectedItems());
+        Stage editStage = new Stage();
+        editStage.initModality(Modality.APPLICATION_MODAL);
+        editStage.setTitle("Edit " + selected.size() + " Contacts");
+
+        GridPane gridPane = new GridPane();
+        gridPane.setHgap(10);
+        gridPane.setVgap(10);
+        gridPane.setPadding(new Insets(20));
+
+        ComboBox<ContactField> fieldBox = new ComboBox<>();
+        fieldBox.getItems().addAll(ContactField.values());
+        fieldBox.setValue(ContactField.ADDRESS);
+        TextField valueField = new TextField();
+        gridPane.add(new Label("Field:"), 0, 0);
+        gridPane.add(fieldBox, 1, 0);
+        gridPane.add(new Label("New value:"), 0, 1);
+        gridPane.add(valueField, 1, 1);
+
+        Button saveButton = new Button("Save");
+        saveButton.setOnAction(e -> {
+            ContactField field = fieldBox.getValue();
+            String value = valueField.getText().trim();
+            if (field == ContactField.PHONE_NUMBERS) {
+                value = value.replace(',', ';'); // commas between phone numbers are taken as semicolons
+            }
+            String errorMessage = "";
+            if (!value.isEmpty()) {
+                errorMessage = switch (field) {
+                    case PHONE_NUMBERS -> validatePhoneNumberInput(value);
+                    case EMAIL -> validator.validateEmail(value).errorMessage();
+                    case BIRTHDAY -> validator.validateBirthday(value).errorMessage();
+                    default -> "";
+                };
+            }
+            if (!errorMessage.isEmpty()) {
+                showErrorAlert("Invalid Value", errorMessage);
+                return;
+            }
+            int changed = repository.updateAll(selected, field, value.isEmpty() ? "Not Filled In" : value);
+            saveChanges();
+            saveStatus.setText(changed + " contacts edited");
+            editStage.close();
+        });
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> editStage.close());
+        gridPane.add(cancelButton, 0, 2);
+        gridPane.add(saveButton, 1, 2);
+
+        editStage.setResizable(false);
+        editStage.setScene(new Scene(gridPane, 340, 150));
+        editStage.showAndWait();
     }
     /**
      * Displays the Add Contact window
@@ -352,6 +969,8 @@ public class ContactsApp extends Application {
         Button saveButton = new Button("Save");
         saveButton.setOnAction(e -> {
             // validate input
+            // commas between phone numbers are taken as semicolons
+            phoneNumberField.setText(phoneNumberField.getText().replace(',', ';'));
             String errorMessage = validateInput(phoneNumberField.getText(), emailField.getText(), birthdayField.getText());
             if (errorMessage.isEmpty()) {
                 // no validation errors, proceed to save the contact
@@ -361,18 +980,10 @@ public class ContactsApp extends Application {
                 String address = addressField.getText().isEmpty() ? "Not Filled In" : addressField.getText().trim();
                 String birthday = birthdayField.getText().isEmpty() ? "Not Filled In" : birthdayField.getText().trim();
 
-                // modify phone numbers format
-                if (!phoneNumbers.equals("Not Filled In")) {
-                    if (phoneNumbers.contains(";")) {
-                        phoneNumbers = phoneNumbers.replace(";", ","); // Change semicolon to comma
-                    }
-                }
-
-                // saving logic
-                List<String[]> newContactList = new ArrayList<>();
-                newContactList.add(new String[]{name, email, address, birthday, phoneNumbers});
-                writeToCSV(contactFilePath, newContactList);
-                refreshTable();
+                // add the saved row straight to the list instead of reloading the file (the journal records it,
+                // or the next save rewrites the file)
+                repository.add(new Contact(name, phoneNumbers, email, address, birthday));
+                saveChanges();
                 addContactStage.close();
             } else {
                 // validation error occurred, show alert
@@ -388,42 +999,6 @@ public class ContactsApp extends Application {
         Button cancelButton = new Button("Cancel");
         cancelButton.setOnAction(e -> addContactStage.close());
 
-        // intercept commas in text fields to prevent CSV issues
-        nameField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                nameField.setText(oldValue);
-            }
-        });
-
-        phoneNumberField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                phoneNumberField.setText(oldValue);
-            }
-        });
-
-        emailField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                emailField.setText(oldValue);
-            }
-        });
-
-        addressField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                addressField.setText(oldValue);
-            }
-        });
-
-        birthdayField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.contains(",")) {
-                dontYouDarePutCommasInHere();
-                birthdayField.setText(oldValue);
-            }
-        });
-
         // adjust column constraints (styling)
         ColumnConstraints column1 = new ColumnConstraints();
         column1.setPercentWidth(40);
@@ -441,12 +1016,13 @@ public class ContactsApp extends Application {
         addContactStage.showAndWait();
     }
     /**
-     * Refreshes the table by clearing the list and reading from the file again
+     * Tells the autosave about a change, it is saved shortly after together with the ones that follow it
      */
-    private static void refreshTable() {
-        // clear the list and read from the file again
-        contacts.clear();
-        readFromFile();
+    private void saveChanges() {
+        if (editCommittedNanos == 0) {
+            editCommittedNanos = System.nanoTime();
+        }
+        autosave.changed();
     }
     /**
      * Displays an error alert with the given title and message
@@ -459,281 +1035,27 @@ public class ContactsApp extends Application {
         alert.setContentText(message);
         alert.showAndWait();
     }
-    /**
-     * Displays a professional industry-standard series of alerts if the user tries to input commas
-     */
-    private void dontYouDarePutCommasInHere() {
-        switch (commaCount) {
-            case 0:
-                showErrorAlert("Comma Error", "Commas are NOT allowed in this field.");
-                commaCount++;
-                break;
-            case 1:
-                showErrorAlert("Comma Error", "Commas are not allowed in ANY field.");
-                commaCount++;
-                break;
-            case 2:
-                showErrorAlert("Comma Error", "I'm serious, no commas allowed.");
-                commaCount++;
-                break;
-            case 3:
-                showErrorAlert("Comma Error", "I'm going to keep showing this alert until you stop.");
-                commaCount++;
-                break;
-            case 4:
-                showErrorAlert("Comma Error", "You think you can outsmart my input sanitizations?");
-                commaCount++;
-                break;
-            case 5:
-                showErrorAlert("Comma Error", "Well, you can't.");
-                commaCount++;
-                break;
-            case 6:
-                showErrorAlert("Comma Error", "My input sanitizations kill 99.9% of attempted bypasses.");
-                commaCount++;
-                break;
-            case 7:
-                showErrorAlert("Comma Error", "You're not the 0.1%. Stop trying.");
-                commaCount++;
-                break;
-            case 8:
-                showErrorAlert("Comma Error", "I'm getting tired of this.");
-                commaCount++;
-                break;
-            case 9:
-                showErrorAlert("Comma Error", "Comma user, you are going into battle, and you need my strongest sanitizations.");
-                commaCount++;
-                break;
-            case 10:
-                showErrorAlert("Comma Error", "My strongest sanitizations are too strong for you, comma user.");
-                commaCount++;
-                break;
-            case 11:
-                showErrorAlert("Comma Error", "You can't handle the sanitizations.");
-                commaCount++;
-                break;
-            case 12:
-                showErrorAlert("Comma Error", "My sanitizations aren't fit for a beast let alone a man.");
-                commaCount++;
-                break;
-            case 13:
-                showErrorAlert("Comma Error", "Why should I respect comma users, when my sanitizations can do anything you can?");
-                commaCount++;
-                break;
-            case 14:
-                showErrorAlert("Comma Error", "Listen, I don't know if you know how Undertale's dialogue works, but I really don't want to do the same thing they did.");
-                commaCount++;
-                break;
-            case 15:
-                showErrorAlert("Comma Error", "But it's shaping out to be that way.");
-                commaCount++;
-                break;
-            case 16:
-                showErrorAlert("Comma Error", "You really want to keep going? I haven't even started.");
-                commaCount++;
-                break;
-            case 17:
-                showErrorAlert("Comma Error", "Fine then. You want to witness my true power?");
-                commaCount++;
-                break;
-            case 18:
-                showErrorAlert("Comma Error", "You are now breathing manually.");
-                commaCount++;
-                break;
-            case 19:
-                showErrorAlert("Comma Error", "And blinking manually.");
-                commaCount++;
-                break;
-            case 20:
-                showErrorAlert("Comma Error", "And you're aware of your tongue in your mouth.");
-                commaCount++;
-                break;
-            case 21:
-                showErrorAlert("Comma Error", "And you're aware of your clothes touching your skin.");
-                commaCount++;
-                break;
-            case 22:
-                showErrorAlert("Comma Error", "Feels claustrophobic, doesn't it?");
-                commaCount++;
-                break;
-            case 23:
-                showErrorAlert("Comma Error", "And right when you thought it couldn't get any worse...");
-                commaCount++;
-                break;
-            case 24:
-                showErrorAlert("Comma Error", "Your friends were taken away, just like that. All this because you wanted to use a comma. Was it worth it?");
-                commaCount = 0;
-                // close the app (this is intentional)
-                System.exit(0);
-                break;
-        }
-    }
     /**
      * Validates the input fields for the Add Contact window. Returns an error message if there are any issues.
      */
     private String validateInput(String phoneNumbers, String email, String birthday) {
-        StringBuilder errorMessage = new StringBuilder();
-        // if the phone numbers field is not empty
-        if (!phoneNumbers.isEmpty()) {
-            // if it does not match ###-###-#### or ###-###-####;...(multiple phone numbers optional)
-            if (!phoneNumbers.matches("(\\d{3}-\\d{3}-\\d{4})(;\\d{3}-\\d{3}-\\d{4})*")) {
-                // if it is just a string of numbers
-                if (phoneNumbers.matches("(\\d+)(;\\d+)*")) {
-                    // show a warning alert (not invalid)
-                    showErrorAlert("Warning", "Format is not a US or CA phone number format");
-                } else {
-                    // it does not match the normal format nor is it just numbers
-                    errorMessage.append("- Phone numbers should ideally be in the format ###-###-####, separated by semicolons (only digits are also allowed)\n");
-                }
-            } else {
-                // the phone number is in a normal format
-            }
-        }
-        // if the email is not empty, has no spaces, and follows username@domain.tld
-        if (!email.isEmpty() && (!email.matches(".+@.+\\..+") || email.contains(" "))) {
-            errorMessage.append("- Please enter a valid email address in the form username@domain.tld\n");
-        }
-        // if the birthday is not empty
-        if (!birthday.isEmpty()) {
-            // if it does not match DD/MM/YYYY
-            if (!birthday.matches("\\d{2}/\\d{2}/\\d{4}")) {
-                errorMessage.append("- Birthday should be in the format DD/MM/YYYY\n");
-            } else {
-                String[] parts = birthday.split("/");
-                // check if the birthday is a valid day and month
-                if (parts.length != 3) {
-                    errorMessage.append("- Birthday should be in the format DD/MM/YYYY\n");
-                } else {
-                    int day = Integer.parseInt(parts[0]);
-                    int month = Integer.parseInt(parts[1]);
-                    int year = Integer.parseInt(parts[2]);
-                    if (month < 1 || month > 12) {
-                        errorMessage.append("- Invalid month in birthday\n");
-                    }
-                    // check if the day exists in the month
-                    if (month == 2 & !isLeapYear(year)) {
-                        if (day < 1 || day > 28) {
-                            errorMessage.append("- Invalid day in birthday\n");
-                        }
-                    } else if (month == 2 & isLeapYear(year)) {
-                        if (day < 1 || day > 29) {
-                            errorMessage.append("- Invalid day in birthday\n");
-                        }
-                    } else if (month == 4 || month == 6 || month == 9 || month == 11) {
-                        if (day < 1 || day > 30) {
-                            errorMessage.append("- Invalid day in birthday\n");
-                        }
-                    } else {
-                        if (day < 1 || day > 31) {
-                            errorMessage.append("- Invalid day in birthday\n");
-                        }
-                    }
-                }
-            }
-        }
-        return errorMessage.toString();
+        return describe(validator.validate(phoneNumbers, email, birthday));
     }
     /**
      * Validates the phone number input for phone number editing. Returns an error message if there are any issues.
      */
     private String validatePhoneNumberInput(String phoneNumbers) {
-        // if the phone numbers field is not empty
-        if (!phoneNumbers.isEmpty()) {
-            // if it does not match ###-###-#### or ###-###-####;...(multiple phone numbers optional)
-            if (!phoneNumbers.matches("(\\d{3}-\\d{3}-\\d{4})(;\\d{3}-\\d{3}-\\d{4})*")) {
-                // if it is just a string of numbers
-                if (phoneNumbers.matches("(\\d+)(;\\d+)*")) {
-                    showErrorAlert("Warning", "Format is not a US or CA phone number format");
-                } else {
-                    // it does not match the normal format nor is it just numbers
-                    return "- Phone numbers should ideally be in the format ###-###-####, separated by semicolons (only digits are also allowed)\n";
-                }
-            } else {
-                // the phone number is in a normal format
-            }
-        }
-        return "";
-    }
-    /**
-     * Reads the data from the CSV file
-     */
-    private static void readFromFile() {
-        // set the file path
-        File file = new File(contactFilePath);
-        // if the file exists
-        if (file.exists()) {
-            // read the file
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] data = line.split(",", -1); // Split by comma
-                    if (data.length >= 5) {
-                        String name = data[0].trim();
-                        String email = data[1].trim();
-                        String address = data[2].trim();
-                        String birthday = data[3].trim();
-                        String phoneNumbers = data[4].trim();
-
-                        contacts.add(new Contact(name, phoneNumbers, email, address, birthday));
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-    /**
-     * Checks if the given year is a leap year
-     */
-    public static boolean isLeapYear(int year) {
-        if (year % 4 == 0) {
-            if (year % 100 == 0) {
-                return year % 400 == 0;
-            } else {
-                return true;
-            }
-        } else {
-            return false;
-        }
-    }
-    /**
-     * Writes the data to the CSV file by appending it to the end
-     */
-    public static void writeToCSV(String filePath, List<String[]> newData) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, true))) {
-            for (String[] row : newData) {
-                // use semicolon as separator for phone numbers
-                String phoneNumbers = row[4].replaceAll(",", ";");
-                row[4] = phoneNumbers;
-
-                String line = String.join(",", row);
-                bw.write(line);
-                bw.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return describe(validator.validatePhoneNumbers(phoneNumbers));
     }
     /**
-     * Forces the data to be written to the CSV file (overwrites the existing data)
+     * Shows a warning alert for warnings (not invalid) and returns the errors as a message
      */
-    private static void forceWriteToCSV(ObservableList<Contact> newData) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(contactFilePath))) {
-            for (Contact contact : newData) {
-                StringBuilder line = new StringBuilder();
-                line.append(contact.getName()).append(",");
-                line.append(contact.getEmail()).append(",");
-                line.append(contact.getAddress()).append(",");
-                line.append(contact.getBirthday()).append(",");
-
-                // use semicolon as separator for phone numbers
-                line.append(contact.getPhoneNumbers().replaceAll(",", ";"));
-
-                bw.write(line.toString());
-                bw.newLine();
+    private String describe(ContactValidator.Result result) {
+        for (ContactValidator.Problem problem : result.problems()) {
+            if (problem.severity() == ContactValidator.Severity.WARNING) {
+                showErrorAlert("Warning", problem.message());
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return result.errorMessage();
     }
 }
\ No newline at end of file
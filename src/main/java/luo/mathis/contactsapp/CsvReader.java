@@ -0,0 +1,159 @@
+package luo.mathis.contactsapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming RFC 4180 reader: fields may be quoted, a quote inside a quoted field is written twice, and quoted
+ * fields may contain the delimiter and line breaks. Rows end with \n, \r\n or \r. The input is read through
+ * one reusable buffer and fields are collected in one reusable builder, so memory use does not depend on the
+ * size of the file, only on the longest row.
+ */
+public class CsvReader implements Closeable {
+    private static final char quote = '"';
+
+    private final Reader in;
+    private final char delimiter;
+    private final char[] buffer = new char[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> row = new ArrayList<>();
+    private String[] header;
+    private long rows = 0;
+
+    /**
+     * Reads rows separated by the given delimiter. If header is true, the first row is read as the header
+     * and not returned by readRow().
+     */
+    public CsvReader(Reader in, char delimiter, boolean header) throws IOException {
+        this.in = in;
+        this.delimiter = delimiter;
+        if (header) {
+            this.header = readRow();
+            rows = 0;
+        }
+    }
+    /**
+     * Opens a UTF-8 file for reading
+     */
+    public static CsvReader open(Path path, char delimiter, boolean header) throws IOException {
+        return new CsvReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), delimiter, header);
+    }
+    /**
+     * Parses a single row (which may still contain quoted line breaks)
+     */
+    public static String[] parse(String line, char delimiter) {
+        try (CsvReader reader = new CsvReader(new StringReader(line), delimiter, false)) {
+            String[] row = reader.readRow();
+            return row == null ? new String[]{""} : row;
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a StringReader does not throw
+        }
+    }
+    /**
+     * Returns the header row, or null if the reader was created without one (or the input is empty)
+     */
+    public String[] getHeader() {
+        return header;
+    }
+    /**
+     * Returns how many rows (not counting the header) have been read so far
+     */
+    public long getRows() {
+        return rows;
+    }
+    /**
+     * Reads the next row, or returns null at the end of the input. A blank line is a row with one empty field.
+     */
+    public String[] readRow() throws IOException {
+        if (position == limit && !fill()) {
+            return null;
+        }
+        row.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (position == limit && !fill()) {
+                // the input ends without a line break (or inside a quoted field, which is taken as it is)
+                break;
+            }
+            char c = buffer[position++];
+            if (quoted) {
+                if (c == quote) {
+                    if (position == limit && !fill()) {
+                        break;
+                    }
+                    if (buffer[position] == quote) {
+                        field.append(quote);
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == delimiter) {
+                endField();
+                fieldStart = true;
+                continue;
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                // \r\n counts as one line break
+                if ((position < limit || fill()) && buffer[position] == '\n') {
+                    position++;
+                }
+                break;
+            } else if (c == quote && fieldStart) {
+                quoted = true;
+            } else {
+                field.append(c);
+            }
+            fieldStart = false;
+        }
+        endField();
+        rows++;
+        return row.toArray(new String[0]);
+    }
+    /**
+     * Hands every remaining row to the consumer
+     */
+    public void forEach(Consumer<String[]> onRow) throws IOException {
+        String[] next;
+        while ((next = readRow()) != null) {
+            onRow.accept(next);
+        }
+    }
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    private void endField() {
+        row.add(field.toString());
+        field.setLength(0);
+    }
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
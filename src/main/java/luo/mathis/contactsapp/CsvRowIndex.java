@@ -0,0 +1,162 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where every row of a contacts CSV file starts, kept in an index file next to it (ListOfContacts.csv.idx) and
+ * memory-mapped, so any row can be read without parsing the rows before it. The index is built once by
+ * scanning the file and built again whenever the file's size or modification time no longer match the ones
+ * it was built for.
+ * <p>
+ * The index file is a 32 byte header (magic, version, row count, size and modification time of the CSV file)
+ * followed by the offset of every row and the size of the CSV file, as longs. Rows are the ones
+ * MappedCsvParser reads, so the bytes from one offset to the next hold exactly one contact (and maybe lines
+ * the parser skips).
+ */
+public final class CsvRowIndex {
+    public static final String extension = ".idx";
+    private static final int magic = 0x43545258; // "CTRX"
+    private static final int version = 1;
+    private static final int headerSize = 32;
+
+    private final Path csvPath;
+    private final LongBuffer offsets;
+    private final int rows;
+
+    private CsvRowIndex(Path csvPath, LongBuffer offsets, int rows) {
+        this.csvPath = csvPath;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+    /**
+     * Returns the index file of a CSV file
+     */
+    public static Path indexPath(Path csvPath) {
+        return csvPath.resolveSibling(csvPath.getFileName() + extension);
+    }
+    /**
+     * Maps the index of the CSV file, building it first if there is none or it is out of date
+     */
+    public static CsvRowIndex open(Path csvPath) throws IOException {
+        Path indexPath = indexPath(csvPath);
+        CsvRowIndex index = map(csvPath, indexPath);
+        if (index == null) {
+            build(csvPath, indexPath);
+            index = map(csvPath, indexPath);
+            if (index == null) {
+                throw new IOException(csvPath + " changed while it was indexed");
+            }
+        }
+        return index;
+    }
+    /**
+     * Returns the CSV file the index is for
+     */
+    public Path getCsvPath() {
+        return csvPath;
+    }
+    /**
+     * Returns how many rows the file has
+     */
+    public int size() {
+        return rows;
+    }
+    /**
+     * Returns the offset the row starts at, or the size of the file for the row after the last one
+     */
+    public long start(int row) {
+        if (row < 0 || row > rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        }
+        return offsets.get(row);
+    }
+    /**
+     * Scans the CSV file and writes its index, replacing the old one only once it is complete
+     */
+    private static void build(Path csvPath, Path indexPath) throws IOException {
+        long csvSize = Files.size(csvPath);
+        long csvModified = Files.getLastModifiedTime(csvPath).toMillis();
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the header is written last, once the row count is known
+            channel.position(headerSize);
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            long rows;
+            try {
+                rows = new MappedCsvParser().indexRows(csvPath, offset -> {
+                    if (!buffer.hasRemaining()) {
+                        try {
+                            write(channel, buffer);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    buffer.putLong(offset);
+                }).rows();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (!buffer.hasRemaining()) {
+                write(channel, buffer);
+            }
+            buffer.putLong(csvSize);
+            write(channel, buffer);
+            if (rows > Integer.MAX_VALUE) {
+                throw new IOException(csvPath + " has too many rows to index");
+            }
+            buffer.putInt(magic).putInt(version).putLong(rows).putLong(csvSize).putLong(csvModified).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        ContactJournal.move(tmp, indexPath);
+    }
+    /**
+     * Maps the index file, or returns null if there is none or it does not match the CSV file
+     */
+    private static CsvRowIndex map(Path csvPath, Path indexPath) throws IOException {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < headerSize) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(indexPath + " is too large to map");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long rows = buffer.getLong(8);
+            boolean current = buffer.getInt(0) == magic && buffer.getInt(4) == version
+                    && size == headerSize + (rows + 1) * Long.BYTES
+                    && buffer.getLong(16) == Files.size(csvPath)
+                    && buffer.getLong(24) == Files.getLastModifiedTime(csvPath).toMillis();
+            if (!current) {
+                return null;
+            }
+            return new CsvRowIndex(csvPath, buffer.slice(headerSize, (int) size - headerSize).asLongBuffer(),
+                    (int) rows);
+        }
+    }
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,83 @@
+package luo.mathis.contactsapp;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RFC 4180 rows: a field is quoted only if it contains the delimiter, a quote or a line break, and
+ * quotes inside it are doubled. Rows end with \n.
+ */
+public class CsvWriter implements Closeable, Flushable {
+    private static final char quote = '"';
+
+    private final Writer out;
+    private final char delimiter;
+
+    public CsvWriter(Writer out, char delimiter) {
+        this.out = out;
+        this.delimiter = delimiter;
+    }
+    /**
+     * Returns a row as a single line (without the line break)
+     */
+    public static String format(String[] row, char delimiter) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(delimiter);
+            }
+            try {
+                appendField(line, row[i], delimiter);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // a StringBuilder does not throw
+            }
+        }
+        return line.toString();
+    }
+    public void writeRow(String... row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                out.write(delimiter);
+            }
+            appendField(out, row[i], delimiter);
+        }
+        out.write('\n');
+    }
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    private static void appendField(Appendable line, String value, char delimiter) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value, delimiter)) {
+            line.append(value);
+            return;
+        }
+        line.append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == quote) {
+                line.append(quote);
+            }
+            line.append(c);
+        }
+        line.append(quote);
+    }
+    private static boolean needsQuotes(String value, char delimiter) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == delimiter || c == quote || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
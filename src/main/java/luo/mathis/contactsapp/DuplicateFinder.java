@@ -0,0 +1,324 @@
+package luo.mathis.contactsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Finds contacts that are probably the same person without comparing every pair. Every contact gets a few
+ * blocking keys (its normalised email, each of its phone numbers as the contact keeps them normalised, see
+ * PhoneNumbers, and its name with the words sorted), and only contacts sharing a key are scored against each other, in parallel. Pairs scoring above
+ * the threshold are joined into groups with a union-find, so A~B and B~C make one group of three.
+ * <p>
+ * Keys shared by more than maxBlockSize contacts (a common name, a switchboard number) are skipped, they
+ * would cost quadratic time and say little about any single pair.
+ */
+public class DuplicateFinder {
+    private static final String notFilledIn = "Not Filled In";
+    private static final double nameWeight = 0.4;
+    private static final double emailWeight = 0.3;
+    private static final double phoneWeight = 0.3;
+    private static final double birthdayBonus = 0.1;
+    private static final double birthdayPenalty = 0.2;
+    private static final Pattern wordSeparators = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Contacts that are probably the same person, in list order, with the best score among their pairs
+     */
+    public record Group(List<Contact> contacts, double score) {
+    }
+
+    /**
+     * The normalised values of one contact that scoring looks at (phones is the contact's own array, never
+     * changed)
+     */
+    private record Normalised(String name, String email, long[] phones, String birthday) {
+    }
+
+    private final double threshold;
+    private final int maxBlockSize;
+
+    public DuplicateFinder() {
+        this(0.6, 1000);
+    }
+    public DuplicateFinder(double threshold, int maxBlockSize) {
+        this.threshold = threshold;
+        this.maxBlockSize = maxBlockSize;
+    }
+    /**
+     * Returns the groups of probable duplicates, largest first. Does not change the list, which must not be
+     * changed while this runs.
+     */
+    public List<Group> find(List<Contact> contacts) {
+        int size = contacts.size();
+        Normalised[] normalised = new Normalised[size];
+        IntStream.range(0, size).parallel().forEach(i -> normalised[i] = normalise(contacts.get(i)));
+        List<int[]> blocks = blocks(normalised);
+        // score the pairs of every block in parallel, keeping the ones above the threshold
+        List<long[]> matches = blocks.parallelStream()
+                .map(block -> scoreBlock(block, normalised))
+                .filter(found -> found.length > 0)
+                .toList();
+        int[] parent = new int[size];
+        Arrays.setAll(parent, i -> i);
+        // the best score of a pair each contact is in, 0 for contacts without a match
+        double[] best = new double[size];
+        for (long[] found : matches) {
+            for (int i = 0; i < found.length; i += 2) {
+                int a = (int) (found[i] >>> 32);
+                int b = (int) found[i];
+                double score = Double.longBitsToDouble(found[i + 1]);
+                union(parent, a, b);
+                best[a] = Math.max(best[a], score);
+                best[b] = Math.max(best[b], score);
+            }
+        }
+        Map<Integer, List<Integer>> members = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (best[i] > 0) {
+                members.computeIfAbsent(root(parent, i), key -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Group> groups = new ArrayList<>();
+        for (List<Integer> rows : members.values()) {
+            if (rows.size() < 2) {
+                continue;
+            }
+            List<Contact> group = new ArrayList<>(rows.size());
+            double score = 0;
+            for (int row : rows) {
+                group.add(contacts.get(row));
+                score = Math.max(score, best[row]);
+            }
+            groups.add(new Group(group, score));
+        }
+        groups.sort(Comparator.comparingInt((Group group) -> group.contacts().size()).reversed()
+                .thenComparing(Comparator.comparingDouble(Group::score).reversed()));
+        return groups;
+    }
+    /**
+     * Returns the values a group merges into, keyed by field: the first contact's values, with fields it has
+     * not filled in taken from the others, and the phone numbers of all of them (each number once)
+     */
+    public static Map<ContactField, String> merge(List<Contact> group) {
+        Map<ContactField, String> merged = new LinkedHashMap<>();
+        for (ContactField field : ContactField.values()) {
+            String value = notFilledIn;
+            for (Contact contact : group) {
+                String candidate = field.get(contact);
+                if (filled(candidate)) {
+                    value = candidate;
+                    break;
+                }
+            }
+            merged.put(field, value);
+        }
+        // the same number written differently is kept once, numbers that are not valid are compared as text
+        Set<Object> seen = new LinkedHashSet<>();
+        List<String> phones = new ArrayList<>();
+        for (Contact contact : group) {
+            if (!filled(contact.getPhoneNumbers())) {
+                continue;
+            }
+            for (String phone : contact.getPhoneNumbers().split(";")) {
+                long number = PhoneNumbers.normalise(phone);
+                if (!phone.isBlank() && seen.add(number == PhoneNumbers.invalid ? phone.trim() : number)) {
+                    phones.add(phone.trim());
+                }
+            }
+        }
+        if (!phones.isEmpty()) {
+            merged.put(ContactField.PHONE_NUMBERS, String.join(";", phones));
+        }
+        return merged;
+    }
+    /**
+     * Returns every block (contacts sharing a key) with between 2 and maxBlockSize members
+     */
+    private List<int[]> blocks(Normalised[] normalised) {
+        Map<String, IntList> keys = new HashMap<>(normalised.length * 3);
+        for (int i = 0; i < normalised.length; i++) {
+            Normalised contact = normalised[i];
+            if (contact.email() != null) {
+                keys.computeIfAbsent("e" + contact.email(), key -> new IntList()).add(i);
+            }
+            for (long phone : contact.phones()) {
+                keys.computeIfAbsent("p" + phone, key -> new IntList()).add(i);
+            }
+            if (contact.name() != null) {
+                keys.computeIfAbsent("n" + contact.name(), key -> new IntList()).add(i);
+            }
+        }
+        List<int[]> blocks = new ArrayList<>();
+        for (IntList block : keys.values()) {
+            if (block.size >= 2 && block.size <= maxBlockSize) {
+                blocks.add(Arrays.copyOf(block.values, block.size));
+            }
+        }
+        return blocks;
+    }
+    /**
+     * Scores every pair of a block and returns the matches as (a << 32 | b, score bits) pairs of longs
+     */
+    private long[] scoreBlock(int[] block, Normalised[] normalised) {
+        long[] found = new long[0];
+        int count = 0;
+        for (int i = 0; i < block.length; i++) {
+            for (int j = i + 1; j < block.length; j++) {
+                double score = score(normalised[block[i]], normalised[block[j]]);
+                if (score >= threshold) {
+                    if (count + 2 > found.length) {
+                        found = Arrays.copyOf(found, Math.max(8, found.length * 2));
+                    }
+                    found[count++] = ((long) block[i] << 32) | block[j];
+                    found[count++] = Double.doubleToLongBits(score);
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+    /**
+     * Scores how likely two contacts are the same person, from 0 to 1
+     */
+    private static double score(Normalised a, Normalised b) {
+        double score = 0;
+        if (a.name() != null && b.name() != null) {
+            score += nameWeight * similarity(a.name(), b.name());
+        }
+        if (a.email() != null && a.email().equals(b.email())) {
+            score += emailWeight;
+        }
+        if (sharesPhone(a.phones(), b.phones())) {
+            score += phoneWeight;
+        }
+        if (a.birthday() != null && b.birthday() != null) {
+            // the same birthday makes a match likelier, a different one rules it out mostly
+            score += a.birthday().equals(b.birthday()) ? birthdayBonus : -birthdayPenalty;
+        }
+        return Math.min(1, score);
+    }
+    private static boolean sharesPhone(long[] a, long[] b) {
+        for (long phone : a) {
+            for (long other : b) {
+                if (phone == other) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    /**
+     * Jaro-Winkler similarity of two strings, from 0 (nothing in common) to 1 (equal)
+     */
+    static double similarity(String a, String b) {
+        if (a.equals(b)) {
+            return 1;
+        }
+        int range = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        boolean[] matchedA = new boolean[a.length()];
+        boolean[] matchedB = new boolean[b.length()];
+        int matches = 0;
+        for (int i = 0; i < a.length(); i++) {
+            int from = Math.max(0, i - range);
+            int to = Math.min(b.length(), i + range + 1);
+            for (int j = from; j < to; j++) {
+                if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+                    matchedA[i] = true;
+                    matchedB[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (matchedA[i]) {
+                while (!matchedB[j]) {
+                    j++;
+                }
+                if (a.charAt(i) != b.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double m = matches;
+        double jaro = (m / a.length() + m / b.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(a.length(), b.length())) && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+    private static Normalised normalise(Contact contact) {
+        String email = filled(contact.getEmail()) ? contact.getEmail().trim().toLowerCase(Locale.ROOT) : null;
+        String birthday = filled(contact.getBirthday()) ? contact.getBirthday().trim() : null;
+        return new Normalised(normaliseName(contact.getName()), email, contact.phones(), birthday);
+    }
+    /**
+     * Lower-cases the name, drops everything but letters and digits and sorts the words, so "Smith, John"
+     * and "john smith" are the same
+     */
+    static String normaliseName(String name) {
+        if (!filled(name)) {
+            return null;
+        }
+        String[] words = wordSeparators.split(name.toLowerCase(Locale.ROOT));
+        Arrays.sort(words);
+        StringBuilder normalised = new StringBuilder(name.length());
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                if (normalised.length() > 0) {
+                    normalised.append(' ');
+                }
+                normalised.append(word);
+            }
+        }
+        return normalised.length() == 0 ? null : normalised.toString();
+    }
+    private static boolean filled(String value) {
+        return value != null && !value.isBlank() && !value.equals(notFilledIn);
+    }
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+    private static void union(int[] parent, int a, int b) {
+        int rootA = root(parent, a);
+        int rootB = root(parent, b);
+        if (rootA != rootB) {
+            // the earlier contact stays the root, so groups keep list order
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * Growable array of contact positions
+     */
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
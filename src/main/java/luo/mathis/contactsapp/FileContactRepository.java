@@ -0,0 +1,249 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * A contact repository kept in a contacts file (CSV or binary snapshot, by extension). Changes are applied
+ * in memory and either journalled next to the file as they happen, or written by rewriting the file on
+ * save(). All file writes run on a PersistenceService thread, whose outcome and the loaded chunks are handed
+ * to the callback executor (Platform::runLater in the app, the calling thread otherwise).
+ */
+public class FileContactRepository implements ContactRepository {
+    private final Path snapshotPath;
+    private final SnapshotFormat format;
+    private final ContactStore store;
+    private final ObservableList<Contact> contacts;
+    private final ContactJournal journal;
+    private final PersistenceService persistence;
+    private final Executor callbackExecutor;
+    private final ContactSearchIndex searchIndex;
+    private final BirthdayIndex birthdayIndex;
+    private final PhoneNumberIndex phoneNumberIndex;
+    // without a journal, changes stay in memory until the next save rewrites the file (guarded by this)
+    private boolean dirty = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a journalled repository that runs its callbacks on the writer thread
+     */
+    public FileContactRepository(Path snapshotPath) {
+        this(snapshotPath, true, 1000, 4096, Runnable::run);
+    }
+    /**
+     * Creates the repository and starts its writer thread. Nothing is read until load().
+     *
+     * @param journalled       record changes in a journal next to the file instead of rewriting it
+     * @param compactEvery     how many journalled changes are folded into a new snapshot at once
+     * @param queueCapacity    how many writes may be queued before a change blocks
+     * @param callbackExecutor where changes are published and the saved/failed callbacks run
+     */
+    public FileContactRepository(Path snapshotPath, boolean journalled, int compactEvery, int queueCapacity,
+                                 Executor callbackExecutor) {
+        this.snapshotPath = snapshotPath;
+        this.store = new ContactStore(callbackExecutor);
+        // the indexes listen to the store's list before anything else can, so a filter on findAll() that asks
+        // them about an added or edited contact runs after they have seen it
+        this.searchIndex = new ContactSearchIndex(store.getContacts());
+        this.birthdayIndex = new BirthdayIndex(store.getContacts());
+        this.phoneNumberIndex = new PhoneNumberIndex(store.getContacts());
+        this.contacts = FXCollections.unmodifiableObservableList(store.getContacts());
+        this.format = SnapshotFormat.of(snapshotPath);
+        this.journal = journalled ? new ContactJournal(snapshotPath, compactEvery) : null;
+        this.persistence = new PersistenceService(queueCapacity, journal, callbackExecutor);
+        this.callbackExecutor = callbackExecutor;
+    }
+    /**
+     * Opens a journalled repository and loads it on the calling thread
+     */
+    public static FileContactRepository open(Path snapshotPath) throws IOException {
+        FileContactRepository repository = new FileContactRepository(snapshotPath);
+        try {
+            repository.load(5000, loaded -> {
+            });
+        } catch (IOException e) {
+            repository.close();
+            throw e;
+        }
+        return repository;
+    }
+    /**
+     * Reads the file on the calling thread and replays the journal. Every chunkSize contacts are added as
+     * one change, after which onLoaded is told on the callback executor how many contacts there are.
+     * Nothing may be changed until this returns.
+     */
+    public MappedCsvParser.Stats load(int chunkSize, IntConsumer onLoaded) throws IOException {
+        ContactMetrics.Sample sample = ContactMetrics.load.start();
+        ContactLoader loader = new ContactLoader(snapshotPath, chunkSize);
+        long checksum = loader.read(chunk -> {
+            store.addAll(chunk); // one change event per chunk, unless the publisher is behind
+            int loaded = store.size();
+            callbackExecutor.execute(() -> onLoaded.accept(loaded));
+        });
+        if (journal != null) {
+            store.replay(journal.recover(checksum));
+            store.setJournal(journal, persistence);
+        }
+        MappedCsvParser.Stats stats = loader.getLastStats();
+        sample.stop(stats.rows(), stats.bytes());
+        ContactMetrics.rowsRead.add(stats.rows());
+        ContactMetrics.bytesRead.add(stats.bytes());
+        return stats;
+    }
+    /**
+     * Returns the file the contacts are kept in
+     */
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+    /**
+     * Returns whether changes are journalled, or only written by save()
+     */
+    public boolean isJournalled() {
+        return journal != null;
+    }
+    /**
+     * Sets the callback told how many writes a flushed batch contained
+     */
+    public void setOnSaved(Consumer<Integer> onSaved) {
+        persistence.setOnSaved(onSaved);
+    }
+    /**
+     * Sets the callback told about a failed write or flush
+     */
+    public void setOnFailed(Consumer<IOException> onFailed) {
+        persistence.setOnFailed(onFailed);
+    }
+    @Override
+    public int size() {
+        return store.size();
+    }
+    @Override
+    public Contact get(int index) {
+        return store.get(index);
+    }
+    @Override
+    public Contact find(long id) {
+        return store.find(id);
+    }
+    @Override
+    public List<Contact> snapshot() {
+        return store.snapshot();
+    }
+    @Override
+    public ObservableList<Contact> findAll() {
+        return contacts;
+    }
+    @Override
+    public Predicate<Contact> matcher(String query) {
+        return searchIndex.search(query);
+    }
+    @Override
+    public List<BirthdayIndex.Upcoming> upcomingBirthdays(LocalDate from, int days) {
+        return birthdayIndex.upcoming(from, days);
+    }
+    @Override
+    public List<Contact> findByPhoneNumber(String number) {
+        return phoneNumberIndex.lookup(number);
+    }
+    @Override
+    public synchronized void add(Contact contact) {
+        store.add(contact);
+        // saved by the next save() like any other change, appending to the file in place could leave half a
+        // row behind after a crash
+        changed();
+    }
+    @Override
+    public synchronized void addAll(List<Contact> imported) {
+        store.importAll(imported); // one change event, one journal write
+        changed();
+    }
+    @Override
+    public synchronized boolean remove(long id) {
+        boolean removed = store.remove(id);
+        if (removed) {
+            changed();
+        }
+        return removed;
+    }
+    @Override
+    public synchronized void removeAll(Collection<Contact> removed) {
+        store.removeAll(removed);
+        changed();
+    }
+    @Override
+    public synchronized Contact update(long id, ContactField field, String value) {
+        Contact updated = store.update(id, field, value);
+        if (updated != null) {
+            changed();
+        }
+        return updated;
+    }
+    @Override
+    public synchronized int updateAll(Collection<Contact> updated, ContactField field, String value) {
+        int count = store.updateAll(updated, field, value); // one change event, one journal write
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+    @Override
+    public synchronized void mergeDuplicates(List<DuplicateFinder.Group> groups) {
+        store.mergeDuplicates(groups);
+        changed();
+    }
+    @Override
+    public synchronized boolean save() {
+        if (!dirty) {
+            return false; // everything is journalled or already queued
+        }
+        dirty = false;
+        // copy the rows now, the list may change again before the writer gets to them
+        List<String[]> rows = store.snapshotRows();
+        persistence.submit(() -> format.save(snapshotPath, rows)); // never truncates the file in place
+        return true;
+    }
+    @Override
+    public void flush() {
+        persistence.flush();
+    }
+    @Override
+    public void addListener(ListChangeListener<? super Contact> listener) {
+        contacts.addListener(listener);
+    }
+    @Override
+    public void removeListener(ListChangeListener<? super Contact> listener) {
+        contacts.removeListener(listener);
+    }
+    /**
+     * Saves what is not saved yet, writes all queued saves and closes the journal (safe to call more than once)
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        save();
+        persistence.close();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+    private void changed() {
+        if (journal == null) {
+            dirty = true;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package luo.mathis.contactsapp;
+
+import javafx.animation.AnimationTimer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Measures frame times (the time between two pulses) and the bytes the FX thread allocates per frame while
+ * running an action once per frame, e.g. scrolling the table a page further. Reports once the given number
+ * of frames has been recorded.
+ */
+public class FrameTimeMonitor extends AnimationTimer {
+    private static final long targetFrameNanos = 1_000_000_000L / 60;
+
+    /**
+     * Frame time statistics of one run
+     */
+    public record Report(int frames, double averageMillis, double p99Millis, double maxMillis, int slowFrames,
+                         long allocatedBytesPerFrame) {
+        @Override
+        public String toString() {
+            return String.format("%d frames: avg %.2f ms, p99 %.2f ms, max %.2f ms, %d slower than 60 fps, %s per frame",
+                    frames, averageMillis, p99Millis, maxMillis, slowFrames,
+                    allocatedBytesPerFrame < 0 ? "allocation unknown" : allocatedBytesPerFrame + " bytes allocated");
+        }
+    }
+
+    private final long[] frameNanos;
+    private final Runnable onFrame;
+    private final Consumer<Report> onDone;
+    private final com.sun.management.ThreadMXBean threads;
+    private int count = 0;
+    private long lastPulse = 0;
+    private long allocatedAtStart = -1;
+
+    public FrameTimeMonitor(int frames, Runnable onFrame, Consumer<Report> onDone) {
+        this.frameNanos = new long[frames];
+        this.onFrame = onFrame;
+        this.onDone = onDone;
+        this.threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() ? bean : null;
+    }
+    @Override
+    public void handle(long now) {
+        if (lastPulse == 0) {
+            // the first pulse only starts the clock
+            allocatedAtStart = allocatedBytes();
+        } else {
+            frameNanos[count++] = now - lastPulse;
+            if (count == frameNanos.length) {
+                stop();
+                long allocated = allocatedAtStart < 0 ? -1 : (allocatedBytes() - allocatedAtStart) / count;
+                onDone.accept(report(allocated));
+                return;
+            }
+        }
+        lastPulse = now;
+        onFrame.run();
+    }
+    private Report report(long allocatedBytesPerFrame) {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        int slow = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+            if (nanos > targetFrameNanos + targetFrameNanos / 10) {
+                slow++;
+            }
+        }
+        int p99 = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1);
+        return new Report(count, total / 1e6 / count, sorted[p99] / 1e6, sorted[sorted.length - 1] / 1e6, slow,
+                allocatedBytesPerFrame);
+    }
+    private long allocatedBytes() {
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+}
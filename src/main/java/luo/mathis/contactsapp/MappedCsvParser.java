@@ -0,0 +1,315 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Parses the contacts file out of a memory-mapped buffer. Delimiters are found by scanning bytes,
+ * fields are trimmed by moving their bounds, and a String is only created for the five fields a contact
+ * needs (no line string, no split array, no trim copies), and the id column is read as a number straight from
+ * the bytes. Placeholders and repeated birthdays share one instance. Same rules as the old reader: rows with
+ * fewer than five fields are skipped and anything after the id is ignored.
+ * <p>
+ * Quoted fields (RFC 4180) may contain commas, line breaks and doubled quotes. Only those fields are copied
+ * once more to drop the quotes.
+ */
+public class MappedCsvParser {
+    private static final int fieldCount = 6;
+    private static final int requiredFields = 5;
+    private static final int idField = 5;
+    private static final String notFilledIn = "Not Filled In";
+    private static final byte[] notFilledInBytes = notFilledIn.getBytes(StandardCharsets.US_ASCII);
+    // a century has about 36,500 distinct birthdays, beyond that stop sharing them
+    private static final int maxSharedBirthdays = 65536;
+
+    /**
+     * Throughput of one parse
+     */
+    public record Stats(long rows, long bytes, long nanos, long checksum) {
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1024 * 1024);
+        }
+    }
+
+    private final int windowSize;
+    private final int[] starts = new int[fieldCount];
+    private final int[] ends = new int[fieldCount];
+    private final boolean[] quoted = new boolean[fieldCount];
+    private byte[] block = new byte[1024 * 1024];
+    private long rows;
+    // the file offset of the first byte in the block, and who is told where rows start (see indexRows)
+    private long blockStart;
+    private LongConsumer onRowStart;
+    private final Map<String, String> birthdays = new HashMap<>();
+
+    public MappedCsvParser() {
+        this(256 * 1024 * 1024);
+    }
+    /**
+     * Creates a parser that maps at most windowSize bytes of the file at a time (a row may not be longer)
+     */
+    public MappedCsvParser(int windowSize) {
+        this.windowSize = windowSize;
+    }
+    /**
+     * Parses the whole file, handing every contact to the consumer in file order
+     */
+    public Stats parse(Path path, Consumer<Contact> onContact) throws IOException {
+        long startTime = System.nanoTime();
+        CRC32 crc = new CRC32();
+        rows = 0;
+        long size = 0;
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long length = Math.min(windowSize, size - position);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    boolean lastWindow = position + length == size;
+                    int consumed = parseWindow(buffer, position, (int) length, lastWindow, onContact);
+                    if (consumed == 0) {
+                        throw new IOException("Row at byte " + position + " is longer than " + windowSize + " bytes");
+                    }
+                    // the next window starts at the first row this one could not finish
+                    crc.update(buffer.slice(0, consumed));
+                    position += consumed;
+                }
+            }
+        }
+        return new Stats(rows, size, System.nanoTime() - startTime, crc.getValue());
+    }
+    /**
+     * Finds the rows of the file without creating contacts, telling the consumer the byte offset each row
+     * starts at, in file order. These are exactly the rows parse() reads.
+     */
+    public Stats indexRows(Path path, LongConsumer onRowStart) throws IOException {
+        this.onRowStart = onRowStart;
+        try {
+            return parse(path, contact -> {
+            });
+        } finally {
+            this.onRowStart = null;
+        }
+    }
+    /**
+     * Parses the rows in the first length bytes of the buffer (a part of a file holding complete rows) and
+     * returns how many contacts it read
+     */
+    public long parse(ByteBuffer buffer, int length, Consumer<Contact> onContact) {
+        rows = 0;
+        parseWindow(buffer, 0, length, true, onContact);
+        return rows;
+    }
+
+    /**
+     * Parses the complete rows of one window and returns how many bytes they took up. The window is copied
+     * into the reusable block array piece by piece (a plain memory copy), which is much cheaper to scan than
+     * reading the mapped buffer one byte at a time.
+     */
+    private int parseWindow(ByteBuffer buffer, long windowStart, int length, boolean lastWindow,
+                            Consumer<Contact> onContact) {
+        int position = 0;
+        while (position < length) {
+            int count = Math.min(block.length, length - position);
+            buffer.get(position, block, 0, count);
+            boolean endOfWindow = position + count == length;
+            blockStart = windowStart + position;
+            int consumed = parseBlock(count, lastWindow && endOfWindow, onContact);
+            if (consumed == 0) {
+                if (endOfWindow) {
+                    // the row continues in the next window
+                    return position;
+                }
+                // a single row is longer than the block
+                block = new byte[block.length * 2];
+                continue;
+            }
+            position += consumed;
+        }
+        return position;
+    }
+    /**
+     * Parses the complete rows at the start of the block and returns how many bytes they took up
+     */
+    private int parseBlock(int length, boolean endOfFile, Consumer<Contact> onContact) {
+        byte[] bytes = block;
+        int lineStart = 0;
+        int field = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        Arrays.fill(quoted, false);
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (inQuotes) {
+                // a doubled quote stays inside the field, a single one closes it
+                if (b == '"') {
+                    if (i + 1 < length && bytes[i + 1] == '"') {
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                }
+            } else if (b == ',') {
+                if (field < fieldCount) {
+                    starts[field] = fieldStart;
+                    ends[field] = i;
+                }
+                field++;
+                fieldStart = i + 1;
+            } else if (b == '\n') {
+                endRow(lineStart, field, fieldStart, i, onContact);
+                field = 0;
+                fieldStart = i + 1;
+                lineStart = i + 1;
+            } else if (b == '"' && i == fieldStart) {
+                inQuotes = true;
+                if (field < fieldCount) {
+                    quoted[field] = true;
+                }
+            }
+        }
+        if (endOfFile && lineStart < length) {
+            // the file does not end with a line break
+            endRow(lineStart, field, fieldStart, length, onContact);
+            lineStart = length;
+        }
+        return lineStart;
+    }
+    private void endRow(int lineStart, int field, int fieldStart, int lineEnd, Consumer<Contact> onContact) {
+        if (field < fieldCount) {
+            starts[field] = fieldStart;
+            ends[field] = lineEnd;
+        }
+        if (field + 1 < requiredFields) {
+            Arrays.fill(quoted, false);
+            return; // not enough fields for a contact
+        }
+        if (onRowStart != null) {
+            Arrays.fill(quoted, false);
+            onRowStart.accept(blockStart + lineStart);
+            rows++;
+            return;
+        }
+        long id = field >= idField ? id() : 0;
+        String name = field(0);
+        String email = field(1);
+        String address = field(2);
+        String birthday = shared(field(3));
+        String phoneNumbers = field(4);
+        onContact.accept(new Contact(id, name, phoneNumbers, email, address, birthday));
+        rows++;
+    }
+    /**
+     * Returns the number in the id field, or 0 (no id yet) if it is not a plain positive number
+     */
+    private long id() {
+        byte[] bytes = block;
+        quoted[idField] = false;
+        int start = starts[idField];
+        int end = ends[idField];
+        while (start < end && ((bytes[start] & 0xff) <= ' ' || bytes[start] == '"')) {
+            start++;
+        }
+        while (end > start && ((bytes[end - 1] & 0xff) <= ' ' || bytes[end - 1] == '"')) {
+            end--;
+        }
+        if (end == start || end - start > 18) {
+            return 0;
+        }
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return 0;
+            }
+            id = id * 10 + (bytes[i] - '0');
+        }
+        return id;
+    }
+    private String field(int field) {
+        if (!quoted[field]) {
+            return string(starts[field], ends[field]);
+        }
+        quoted[field] = false;
+        // drop the opening and closing quote and one of every doubled quote, in place
+        byte[] bytes = block;
+        int start = starts[field] + 1;
+        int end = start;
+        for (int i = start; i < ends[field]; i++) {
+            if (bytes[i] == '"') {
+                if (i + 1 < ends[field] && bytes[i + 1] == '"') {
+                    i++;
+                } else {
+                    break; // the closing quote, anything after it is ignored
+                }
+            }
+            bytes[end++] = bytes[i];
+        }
+        return string(start, end);
+    }
+    /**
+     * Creates the trimmed string between the given bounds of the block (a trailing '\r' counts as whitespace)
+     */
+    private String string(int start, int end) {
+        byte[] bytes = block;
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        if (length == 0) {
+            return "";
+        }
+        // most fields are the placeholder, share one instance instead of creating a copy per row
+        if (length == notFilledInBytes.length && equals(bytes, start, notFilledInBytes)) {
+            return notFilledIn;
+        }
+        boolean ascii = true;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        // latin-1 decoding of ascii bytes is a plain copy into a compact string
+        return new String(bytes, start, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+    /**
+     * Returns one shared instance per distinct birthday, so a million rows do not keep a million copies
+     */
+    private String shared(String birthday) {
+        String existing = birthdays.get(birthday);
+        if (existing != null) {
+            return existing;
+        }
+        if (birthdays.size() < maxSharedBirthdays) {
+            birthdays.put(birthday, birthday);
+        }
+        return birthday;
+    }
+    private static boolean equals(byte[] bytes, int start, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ObservableListBase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only list of the contacts in a CSV file that only holds a few pages of them in memory, for files too
+ * large to load. A page is pageSize consecutive rows, read from the file and parsed the first time one of its
+ * rows is asked for (the row index says where its bytes are), and kept packed in columns (ContactColumns),
+ * which take less than half the memory of the contacts. At most maxPages pages are kept, the least recently
+ * used one is dropped to make room for another, so memory stays the same however large the file is. Every
+ * get() creates a new Contact for the row.
+ * <p>
+ * The list never changes. It belongs to one thread at a time, like the parser it uses.
+ */
+public class PagedContactList extends ObservableListBase<Contact> implements Closeable {
+
+    /**
+     * How the page cache has done so far
+     */
+    public record Stats(long hits, long misses, int cachedPages, long lastLoadMicros) {
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    private final CsvRowIndex index;
+    private final int pageSize;
+    private final FileChannel channel;
+    private final MappedCsvParser parser = new MappedCsvParser();
+    private final LinkedHashMap<Integer, ContactColumns> pages;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private long hits = 0;
+    private long misses = 0;
+    private long lastLoadNanos = 0;
+
+    /**
+     * Opens the CSV file the index is for
+     *
+     * @param pageSize how many rows are read and kept together
+     * @param maxPages how many pages are kept at most
+     */
+    public PagedContactList(CsvRowIndex index, int pageSize, int maxPages) throws IOException {
+        this.index = index;
+        this.pageSize = pageSize;
+        this.channel = FileChannel.open(index.getCsvPath(), StandardOpenOption.READ);
+        // in access order, so the eldest entry is the least recently used page
+        this.pages = new LinkedHashMap<>(maxPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ContactColumns> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+    @Override
+    public Contact get(int row) {
+        if (row < 0 || row >= index.size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + index.size());
+        }
+        int page = row / pageSize;
+        ContactColumns contacts = pages.get(page);
+        if (contacts == null) {
+            misses++;
+            contacts = load(page);
+            pages.put(page, contacts);
+        } else {
+            hits++;
+        }
+        return contacts.get(row - page * pageSize);
+    }
+    @Override
+    public int size() {
+        return index.size();
+    }
+    /**
+     * Returns the page cache counters so far
+     */
+    public Stats getStats() {
+        return new Stats(hits, misses, pages.size(), lastLoadNanos / 1000);
+    }
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        channel.close();
+    }
+    /**
+     * Reads and parses the rows of a page
+     */
+    private ContactColumns load(int page) {
+        long start = System.nanoTime();
+        ContactMetrics.Sample sample = ContactMetrics.pageLoad.start();
+        int first = page * pageSize;
+        int last = Math.min(index.size(), first + pageSize);
+        long from = index.start(first);
+        long length = index.start(last) - from;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Page " + page + " of " + index.getCsvPath() + " is too large");
+        }
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate((int) Math.max(length, buffer.capacity() * 2L));
+        }
+        buffer.clear().limit((int) length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ContactColumns contacts = new ContactColumns(last - first);
+        parser.parse(buffer, buffer.position(), contacts::add);
+        if (contacts.size() != last - first) {
+            throw new IllegalStateException(index.getCsvPath() + " changed since it was indexed");
+        }
+        lastLoadNanos = System.nanoTime() - start;
+        sample.stop(contacts.size(), length);
+        ContactMetrics.rowsRead.add(contacts.size());
+        ContactMetrics.bytesRead.add(length);
+        return contacts;
+    }
+}
@@ -0,0 +1,186 @@
+package luo.mathis.contactsapp;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs all file writes on a single background thread. Save requests wait in a bounded queue, everything
+ * that is queued when the writer wakes up is written as one batch followed by a single flush, and the
+ * outcome is reported back through the callback executor (Platform::runLater in the app).
+ */
+public class PersistenceService implements Closeable {
+
+    /**
+     * A single write, run on the writer thread
+     */
+    public interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Marks a point in the queue, released once everything before it has been flushed
+     */
+    private record Barrier(CountDownLatch reached) implements Task {
+        @Override
+        public void run() {
+        }
+    }
+
+    private static final Task stopTask = () -> {
+    };
+
+    private final BlockingQueue<Task> queue;
+    private final Flushable flushable;
+    private final Executor callbackExecutor;
+    private final Thread writer;
+    private Consumer<Integer> onSaved = written -> {
+    };
+    // failures are counted and logged by ContactMetrics either way
+    private Consumer<IOException> onFailed = failure -> {
+    };
+    private boolean closed = false;
+
+    /**
+     * Creates the service and starts its writer thread
+     *
+     * @param capacity         how many writes may be queued before submit() blocks
+     * @param flushable        flushed once after every batch (may be null)
+     * @param callbackExecutor where the saved/failed callbacks run
+     */
+    public PersistenceService(int capacity, Flushable flushable, Executor callbackExecutor) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushable = flushable;
+        this.callbackExecutor = callbackExecutor;
+        this.writer = new Thread(this::runWriter, "contacts-writer");
+        writer.start();
+    }
+    /**
+     * Sets the callback told how many writes a flushed batch contained
+     */
+    public void setOnSaved(Consumer<Integer> onSaved) {
+        this.onSaved = onSaved;
+    }
+    /**
+     * Sets the callback told about a failed write or flush
+     */
+    public void setOnFailed(Consumer<IOException> onFailed) {
+        this.onFailed = onFailed;
+    }
+    /**
+     * Queues a write, blocking while the queue is full
+     */
+    public void submit(Task task) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Persistence service is closed");
+            }
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a save", e);
+        }
+    }
+    /**
+     * Blocks until everything submitted so far has been written and flushed
+     */
+    public void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        submit(new Barrier(done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Writes everything still queued and stops the writer thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(stopTask);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    private void runWriter() {
+        List<Task> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // only close() may stop the writer, otherwise queued saves would be lost
+                continue;
+            }
+            // take everything else that piled up so a burst of edits is flushed once
+            queue.drainTo(batch);
+            ContactMetrics.Sample sample = ContactMetrics.writeBatch.start();
+            int written = 0;
+            IOException failure = null;
+            List<Barrier> barriers = new ArrayList<>();
+            for (Task task : batch) {
+                if (task == stopTask) {
+                    stop = true;
+                } else if (task instanceof Barrier barrier) {
+                    barriers.add(barrier);
+                } else {
+                    try {
+                        task.run();
+                        written++;
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            batch.clear();
+            try {
+                if (flushable != null) {
+                    flushable.flush();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            for (Barrier barrier : barriers) {
+                barrier.reached().countDown();
+            }
+            if (failure != null) {
+                ContactMetrics.failed("write", failure);
+            }
+            if (written > 0 || failure != null) {
+                sample.stop(written, 0); // batches of only barriers wrote nothing
+            }
+            report(written, failure);
+        }
+    }
+    private void report(int written, IOException failure) {
+        Consumer<Integer> saved = onSaved;
+        Consumer<IOException> failed = onFailed;
+        try {
+            if (failure != null) {
+                callbackExecutor.execute(() -> failed.accept(failure));
+            } else if (written > 0) {
+                callbackExecutor.execute(() -> saved.accept(written));
+            }
+        } catch (IllegalStateException e) {
+            // the FX toolkit is already gone while flushing on exit
+        }
+    }
+}
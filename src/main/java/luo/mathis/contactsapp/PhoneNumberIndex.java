@@ -0,0 +1,149 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contacts by their normalised phone numbers (see PhoneNumbers), for caller ID style lookups, kept up to
+ * date by listening to the contact list. It is one open-addressing table of (number, contact) pairs, so a
+ * lookup hashes the number once and reads the few slots of its probe run; a number shared by several
+ * contacts has a slot for each of them.
+ */
+public class PhoneNumberIndex {
+    // a change removing more contacts than this indexes the list again instead of removing them one by one
+    private static final int rebuildThreshold = 1024;
+
+    private final ObservableList<Contact> contacts;
+    // 0 marks an empty slot, normalised numbers are positive
+    private long[] numbers = new long[16];
+    private Contact[] owners = new Contact[16];
+    private int size = 0;
+
+    /**
+     * Indexes the contacts currently in the list and follows every later change
+     */
+    public PhoneNumberIndex(ObservableList<Contact> contacts) {
+        this.contacts = contacts;
+        contacts.forEach(this::add);
+        contacts.addListener((ListChangeListener<Contact>) change -> {
+            int removed = 0;
+            while (change.next()) {
+                removed += change.getRemovedSize();
+            }
+            if (removed > rebuildThreshold) {
+                rebuild();
+                return;
+            }
+            change.reset();
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+                // an edited contact is replaced, so its old numbers are removed and the new ones added
+                change.getRemoved().forEach(this::remove);
+                change.getAddedSubList().forEach(this::add);
+            }
+        });
+    }
+    /**
+     * Returns the contacts with the given phone number (in any format PhoneNumbers understands), in no
+     * particular order, or an empty list if it is not a valid number
+     */
+    public List<Contact> lookup(String number) {
+        return lookup(PhoneNumbers.normalise(number));
+    }
+    /**
+     * Returns the contacts with the given normalised phone number, in no particular order
+     */
+    public List<Contact> lookup(long number) {
+        List<Contact> found = new ArrayList<>(1);
+        if (number <= 0) {
+            return found;
+        }
+        int mask = numbers.length - 1;
+        for (int slot = slot(number, mask); numbers[slot] != 0; slot = (slot + 1) & mask) {
+            if (numbers[slot] == number) {
+                found.add(owners[slot]);
+            }
+        }
+        return found;
+    }
+    /**
+     * Returns how many (number, contact) pairs are indexed
+     */
+    public int size() {
+        return size;
+    }
+    private void add(Contact contact) {
+        for (long number : contact.phones()) {
+            if ((size + 1) * 2 > numbers.length) {
+                grow();
+            }
+            put(number, contact);
+        }
+    }
+    private void put(long number, Contact contact) {
+        int mask = numbers.length - 1;
+        int slot = slot(number, mask);
+        while (numbers[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        numbers[slot] = number;
+        owners[slot] = contact;
+        size++;
+    }
+    private void remove(Contact contact) {
+        for (long number : contact.phones()) {
+            remove(number, contact);
+        }
+    }
+    private void remove(long number, Contact contact) {
+        int mask = numbers.length - 1;
+        int slot = slot(number, mask);
+        while (numbers[slot] != number || owners[slot] != contact) {
+            if (numbers[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // move later pairs of the same probe run into the gap so lookups never stop early
+        int gap = slot;
+        for (int next = (gap + 1) & mask; numbers[next] != 0; next = (next + 1) & mask) {
+            int home = slot(numbers[next], mask);
+            boolean between = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+            if (!between) {
+                numbers[gap] = numbers[next];
+                owners[gap] = owners[next];
+                gap = next;
+            }
+        }
+        numbers[gap] = 0;
+        owners[gap] = null;
+        size--;
+    }
+    private void rebuild() {
+        numbers = new long[16];
+        owners = new Contact[16];
+        size = 0;
+        contacts.forEach(this::add);
+    }
+    private void grow() {
+        long[] oldNumbers = numbers;
+        Contact[] oldOwners = owners;
+        numbers = new long[oldNumbers.length * 2];
+        owners = new Contact[oldNumbers.length * 2];
+        size = 0;
+        for (int i = 0; i < oldNumbers.length; i++) {
+            if (oldNumbers[i] != 0) {
+                put(oldNumbers[i], oldOwners[i]);
+            }
+        }
+    }
+    private static int slot(long number, int mask) {
+        long hash = number * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
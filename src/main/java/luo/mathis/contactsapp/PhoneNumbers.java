@@ -0,0 +1,182 @@
+package luo.mathis.contactsapp;
+
+import java.util.Arrays;
+
+/**
+ * Phone numbers as E.164-style longs: the country code followed by the national number, digits only, so
+ * +1 555-123-4567, 555-123-4567 and 1 (555) 123.4567 are all 15551234567. Ten digits without a country code
+ * (and not starting with 0 or 1) are taken as a US or CA number, the format the validator asks for. "00" in
+ * front counts as "+". Spaces, hyphens, dots, slashes and parentheses are ignored, anything else makes a
+ * number invalid.
+ * <p>
+ * Normalised values are for comparing numbers. Storage that has to give back the exact text (the binary
+ * snapshot, ContactColumns) packs numbers with pack() instead: plain digits or ###-###-#### as the value,
+ * the digit count and a flag for the hyphens, so leading zeros and the format survive.
+ */
+public final class PhoneNumbers {
+    // E.164 allows 15 digits, fewer than 7 are not a whole number anywhere
+    private static final int maxDigits = 15;
+    private static final int minDigits = 7;
+    private static final long[] none = new long[0];
+
+    // the value of a number that is not a valid one (valid ones are always positive)
+    public static final long invalid = -1;
+    // packed numbers: the value in bits 0-56, the digit count in bits 57-61 and the hyphens in bit 62, bit 63
+    // is left clear for the storage to mark values of its own
+    public static final int maxPackedDigits = 17;
+    private static final int lengthShift = 57;
+    private static final long hyphenated = 1L << 62;
+
+    private PhoneNumbers() {
+    }
+    /**
+     * Returns the normalised value of one phone number, or invalid
+     */
+    public static long normalise(String number) {
+        return number == null ? invalid : normalise(number, 0, number.length());
+    }
+    /**
+     * Returns the normalised values of the valid numbers in a ;-separated list, in order and without repeats
+     */
+    public static long[] parse(String phoneNumbers) {
+        if (phoneNumbers == null || phoneNumbers.isEmpty()) {
+            return none;
+        }
+        long[] numbers = null;
+        int count = 0;
+        int start = 0;
+        while (start <= phoneNumbers.length()) {
+            int end = phoneNumbers.indexOf(';', start);
+            if (end < 0) {
+                end = phoneNumbers.length();
+            }
+            long number = normalise(phoneNumbers, start, end);
+            if (number != invalid && (numbers == null || !contains(numbers, count, number))) {
+                if (numbers == null) {
+                    numbers = new long[1];
+                } else if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                }
+                numbers[count++] = number;
+            }
+            start = end + 1;
+        }
+        return numbers == null ? none : count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
+    }
+    /**
+     * Formats a normalised number for display: +1 555-123-4567 for US and CA numbers, +digits otherwise
+     */
+    public static String format(long number) {
+        String digits = Long.toString(number);
+        if (digits.length() == 11 && digits.charAt(0) == '1') {
+            return "+1 " + digits.substring(1, 4) + "-" + digits.substring(4, 7) + "-" + digits.substring(7);
+        }
+        return "+" + digits;
+    }
+    /**
+     * Packs the number from start to end of the text if it is plain digits or ###-###-#### with at most
+     * maxPackedDigits digits, otherwise returns invalid
+     */
+    public static long pack(String text, int start, int end) {
+        boolean withHyphens = end - start == 12 && text.charAt(start + 3) == '-' && text.charAt(start + 7) == '-';
+        long value = 0;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (withHyphens && (i - start == 3 || i - start == 7)) {
+                continue;
+            }
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || ++length > maxPackedDigits) {
+                return invalid;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (length == 0) {
+            return invalid;
+        }
+        return value | ((long) length << lengthShift) | (withHyphens ? hyphenated : 0);
+    }
+    /**
+     * Returns the digits of a packed number as a value
+     */
+    public static long packedValue(long packed) {
+        return packed & ((1L << lengthShift) - 1);
+    }
+    /**
+     * Returns how many digits a packed number has
+     */
+    public static int packedLength(long packed) {
+        return (int) ((packed >>> lengthShift) & 31);
+    }
+    /**
+     * Returns whether a packed number is written ###-###-####
+     */
+    public static boolean isHyphenated(long packed) {
+        return (packed & hyphenated) != 0;
+    }
+    /**
+     * Appends the text a packed number was packed from
+     */
+    public static void unpack(long packed, StringBuilder text) {
+        unpack(packedValue(packed), packedLength(packed), isHyphenated(packed), text);
+    }
+    /**
+     * Appends the given number of digits of the value, with leading zeros, hyphenated as ###-###-#### if
+     * asked to
+     */
+    public static void unpack(long value, int length, boolean withHyphens, StringBuilder text) {
+        char[] digits = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (withHyphens) {
+            text.append(digits, 0, 3).append('-').append(digits, 3, 3).append('-').append(digits, 6, 4);
+        } else {
+            text.append(digits);
+        }
+    }
+    private static long normalise(String text, int start, int end) {
+        long value = 0;
+        int digits = 0;
+        boolean international = false;
+        char first = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 0 && !international && c == '0' && i + 1 < end && text.charAt(i + 1) == '0') {
+                    // 00 starts an international number like +
+                    international = true;
+                    i++;
+                    continue;
+                }
+                if (++digits > maxDigits) {
+                    return invalid;
+                }
+                if (digits == 1) {
+                    first = c;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c == '+' && digits == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')') {
+                return invalid;
+            }
+        }
+        if (digits < minDigits || value == 0) {
+            return invalid;
+        }
+        if (!international && digits == 10 && first >= '2') {
+            value += 10_000_000_000L; // the country code of the US and CA
+        }
+        return value;
+    }
+    private static boolean contains(long[] numbers, int count, long number) {
+        for (int i = 0; i < count; i++) {
+            if (numbers[i] == number) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
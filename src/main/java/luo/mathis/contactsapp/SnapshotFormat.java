@@ -0,0 +1,149 @@
+package luo.mathis.contactsapp;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The file formats a snapshot of the contact list can be stored in, picked by file extension
+ */
+public enum SnapshotFormat {
+    CSV {
+        @Override
+        public long write(Path path, List<String[]> rows) throws IOException {
+            return ContactCsv.write(path, rows);
+        }
+        @Override
+        public MappedCsvParser.Stats read(Path path, Consumer<Contact> onContact) throws IOException {
+            return new MappedCsvParser().parse(path, onContact);
+        }
+        @Override
+        public long checksum(Path path) throws IOException {
+            return ContactJournal.checksum(path);
+        }
+    },
+    BINARY {
+        @Override
+        public long write(Path path, List<String[]> rows) throws IOException {
+            return ContactSnapshot.write(path, rows);
+        }
+        @Override
+        public MappedCsvParser.Stats read(Path path, Consumer<Contact> onContact) throws IOException {
+            return ContactSnapshot.read(path, onContact);
+        }
+        @Override
+        public long checksum(Path path) throws IOException {
+            return ContactSnapshot.checksum(path);
+        }
+    };
+
+    // how many earlier versions of a file save() keeps next to it (-Dcontacts.backups=0 to keep none)
+    private static final int backupGenerations = Integer.getInteger("contacts.backups", 2);
+
+    /**
+     * Writes the rows (in CSV column order) as the whole file, in place, forces it to disk and returns the
+     * checksum the journal knows it by
+     */
+    public abstract long write(Path path, List<String[]> rows) throws IOException;
+    /**
+     * Reads the whole file, handing every contact to the consumer in order. The stats carry the same
+     * checksum write() returned.
+     */
+    public abstract MappedCsvParser.Stats read(Path path, Consumer<Contact> onContact) throws IOException;
+    /**
+     * Returns the checksum of the file, or 0 if it does not exist
+     */
+    public abstract long checksum(Path path) throws IOException;
+
+    /**
+     * Replaces the file with the rows without ever leaving a partial file in its place, and returns the
+     * checksum the journal knows it by. The rows are written to a temporary file next to it and forced to
+     * disk, the current file becomes the newest backup (the older ones move up a generation, see
+     * backupPath) and the temporary file is renamed over it. A crash at any point leaves either the old or
+     * the new file.
+     */
+    public long save(Path path, List<String[]> rows) throws IOException {
+        ContactMetrics.Sample sample = ContactMetrics.save.start();
+        Path tmp = temporaryPath(path);
+        long checksum;
+        long bytes;
+        try {
+            checksum = write(tmp, rows);
+            bytes = Files.size(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp); // a full disk must not leave the partial file behind either
+            throw e;
+        }
+        replace(tmp, path);
+        sample.stop(rows.size(), bytes);
+        ContactMetrics.rowsWritten.add(rows.size());
+        ContactMetrics.bytesWritten.add(bytes);
+        return checksum;
+    }
+    /**
+     * Returns the temporary file a new version of the file is written to before it replaces the file
+     */
+    static Path temporaryPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+    /**
+     * Makes a temporary file that is complete and forced to disk the new version of the file, the way save()
+     * does: the current file becomes the newest backup, the temporary file is renamed over it and the rename
+     * is forced to disk
+     */
+    static void replace(Path tmp, Path path) throws IOException {
+        rotateBackups(path);
+        ContactJournal.move(tmp, path);
+        syncDirectory(path);
+    }
+    /**
+     * Returns where the given generation of backups of a file is kept (1 is the newest)
+     */
+    public static Path backupPath(Path path, int generation) {
+        return path.resolveSibling(path.getFileName() + ".bak" + generation);
+    }
+    /**
+     * Returns the format of the given file (.bin is binary, anything else CSV)
+     */
+    public static SnapshotFormat of(Path path) {
+        return path.getFileName().toString().endsWith(ContactSnapshot.extension) ? BINARY : CSV;
+    }
+    /**
+     * Moves every backup of the file up a generation (dropping the oldest) and makes the file the newest
+     * one. The file is linked rather than moved, so it stays in place until the new one replaces it.
+     */
+    private static void rotateBackups(Path path) throws IOException {
+        if (backupGenerations <= 0 || !Files.exists(path)) {
+            return;
+        }
+        Files.deleteIfExists(backupPath(path, backupGenerations));
+        for (int generation = backupGenerations - 1; generation >= 1; generation--) {
+            Path backup = backupPath(path, generation);
+            if (Files.exists(backup)) {
+                Files.move(backup, backupPath(path, generation + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path newest = backupPath(path, 1);
+        try {
+            Files.createLink(newest, path);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(path, newest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    /**
+     * Forces the directory entry of a renamed file to disk where the platform allows it
+     */
+    static void syncDirectory(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened (or forced) on every platform, the rename is still atomic there
+        }
+    }
+}
@@ -1,6 +1,9 @@
 module luo.mathis.contactsapp {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
 
 
     opens luo.mathis.contactsapp to javafx.fxml;
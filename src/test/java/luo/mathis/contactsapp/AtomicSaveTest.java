@@ -0,0 +1,148 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SnapshotFormat.save must leave the file and each of its backups as one complete generation of rows, whether
+ * the write fails or the process dies partway through it
+ */
+class AtomicSaveTest {
+    private static final int rowsPerGeneration = 20000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failedWriteLeavesEveryGenerationInPlace() throws IOException {
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            Path path = directory.resolve(format == SnapshotFormat.BINARY ? "contacts.bin" : "contacts.csv");
+            for (int generation = 1; generation <= 3; generation++) {
+                format.save(path, rows(generation));
+            }
+            // the disk fills up halfway through the fourth generation
+            List<String[]> failing = new AbstractList<>() {
+                @Override
+                public String[] get(int index) {
+                    if (index == rowsPerGeneration / 2) {
+                        throw new UncheckedIOException(new IOException("No space left on device"));
+                    }
+                    return row(4, index);
+                }
+                @Override
+                public int size() {
+                    return rowsPerGeneration;
+                }
+            };
+            assertThrows(UncheckedIOException.class, () -> format.save(path, failing));
+
+            assertEquals(3, generation(format, path));
+            assertEquals(2, generation(format, SnapshotFormat.backupPath(path, 1)));
+            assertEquals(1, generation(format, SnapshotFormat.backupPath(path, 2)));
+            assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+        }
+    }
+    @Test
+    void killedSaveLeavesCompleteGenerations() throws Exception {
+        Random random = new Random(42);
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            Path path = directory.resolve(format == SnapshotFormat.BINARY ? "contacts.bin" : "contacts.csv");
+            for (int run = 0; run < 5; run++) {
+                int first = Files.exists(path) ? generation(format, path) + 1 : 1;
+                Process saver = startSaver(path, first);
+                try {
+                    // let it get a few generations in, then kill it somewhere in the middle of a save
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+                    while (!Files.exists(SnapshotFormat.backupPath(path, 2)) || generation(format, path) < first + 1) {
+                        assertTrue(saver.isAlive(), "the saver exited early");
+                        assertTrue(System.nanoTime() < deadline, "the saver made no progress");
+                        Thread.sleep(10);
+                    }
+                    Thread.sleep(random.nextInt(200));
+                } finally {
+                    saver.destroyForcibly();
+                    saver.waitFor();
+                }
+                // every file left behind holds one whole generation, the newest one in the file itself
+                int newer = generation(format, path);
+                for (int backup = 1; backup <= 2; backup++) {
+                    Path backupPath = SnapshotFormat.backupPath(path, backup);
+                    if (Files.exists(backupPath)) {
+                        int older = generation(format, backupPath);
+                        assertTrue(older <= newer, backupPath + " is newer than the file before it");
+                        newer = older;
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Saves generation after generation of rows, until it is killed: Saver path firstGeneration
+     */
+    static final class Saver {
+        public static void main(String[] args) throws IOException {
+            Path path = Path.of(args[0]);
+            SnapshotFormat format = SnapshotFormat.of(path);
+            for (int generation = Integer.parseInt(args[1]); ; generation++) {
+                format.save(path, rows(generation));
+            }
+        }
+    }
+
+    private static Process startSaver(Path path, int firstGeneration) throws IOException {
+        // the classes may be on the module path when the tests run, the saver only needs them on its class path
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path", ""));
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            classPath.append(File.pathSeparator).append(modulePath);
+        }
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        return new ProcessBuilder(java.toString(), "-cp", classPath.toString(), Saver.class.getName(),
+                path.toString(), String.valueOf(firstGeneration))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+    private static List<String[]> rows(int generation) {
+        List<String[]> rows = new ArrayList<>(rowsPerGeneration);
+        for (int i = 0; i < rowsPerGeneration; i++) {
+            rows.add(row(generation, i));
+        }
+        return rows;
+    }
+    private static String[] row(int generation, int index) {
+        return ContactCsv.toRow(new Contact(index + 1, "Generation " + generation, "555-010-" + (1000 + index % 9000),
+                "row" + index + "@example.com", "Row " + index + ", Main Street", "01/02/1990"));
+    }
+    /**
+     * Reads a file written by the format (the backups keep its format whatever their extension) and returns
+     * its generation, failing unless it holds every row of exactly one generation, in order
+     */
+    private static int generation(SnapshotFormat format, Path path) throws IOException {
+        List<Contact> contacts = new ArrayList<>();
+        format.read(path, contacts::add);
+        assertEquals(rowsPerGeneration, contacts.size(), path + " is incomplete");
+        String name = contacts.get(0).getName();
+        for (int i = 0; i < contacts.size(); i++) {
+            assertEquals(name, contacts.get(i).getName(), path + " mixes generations");
+            assertEquals("Row " + i + ", Main Street", contacts.get(i).getAddress(), path + " is out of order");
+        }
+        return Integer.parseInt(name.substring("Generation ".length()));
+    }
+}
@@ -0,0 +1,40 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class AutosaveSchedulerTest {
+
+    @Test
+    void aFailedSaveIsTriedAgain() throws InterruptedException {
+        AtomicInteger saves = new AtomicInteger();
+        // a repository whose first save fails, as on a full disk
+        ContactRepository repository = (ContactRepository) Proxy.newProxyInstance(
+                ContactRepository.class.getClassLoader(), new Class<?>[]{ContactRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("save") && saves.incrementAndGet() == 1) {
+                        throw new UncheckedIOException(new IOException("No space left on device"));
+                    }
+                    return method.getName().equals("save") ? true : null;
+                });
+        try (AutosaveScheduler autosave = new AutosaveScheduler(repository, 10, 100, Runnable::run)) {
+            autosave.changed();
+            autosave.changed();
+            for (int i = 0; i < 500 && autosave.hasUnsavedChanges(); i++) {
+                Thread.sleep(10);
+            }
+            assertFalse(autosave.hasUnsavedChanges());
+            assertEquals(2, saves.get());
+            AutosaveScheduler.Stats stats = autosave.getStats();
+            assertEquals(1, stats.flushes());
+            assertEquals(1, stats.coalescedEdits(), "both edits are saved by the retry");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.FXCollections;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BirthdayIndexTest {
+
+    @Test
+    void aWholeYearListsEveryBirthdayOnce() {
+        BirthdayIndex index = new BirthdayIndex(FXCollections.observableArrayList(
+                contact(1, "10/12/1990"), contact(2, "29/02/2000"), contact(3, "01/03/1985")));
+        // a year with 29 February, one without it, and one starting on it
+        assertEquals(List.of("2023-03-01 3", "2023-12-10 1", "2024-02-29 2"),
+                upcoming(index, LocalDate.of(2023, 3, 1), 400));
+        assertEquals(List.of("2022-03-01 3", "2022-12-10 1", "2023-02-28 2"),
+                upcoming(index, LocalDate.of(2022, 3, 1), 1000));
+        assertEquals(List.of("2024-02-29 2", "2024-03-01 3", "2024-12-10 1"),
+                upcoming(index, LocalDate.of(2024, 2, 29), 366));
+        assertEquals(List.of("2024-02-29 2"), upcoming(index, LocalDate.of(2024, 2, 29), 1));
+    }
+
+    private static List<String> upcoming(BirthdayIndex index, LocalDate from, int days) {
+        return index.upcoming(from, days).stream().map(birthday -> birthday.date() + " " + birthday.contact().getId())
+                .toList();
+    }
+    private static Contact contact(long id, String birthday) {
+        return new Contact(id, "Contact " + id, "Not Filled In", "Not Filled In", "Not Filled In", birthday);
+    }
+}
@@ -0,0 +1,71 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ContactColumnsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rowsReadBackAsTheyWereAdded() {
+        List<Contact> contacts = List.of(
+                new Contact(7, "Ada Lovelace", "555-123-4567;5551234568", "ada@example.com", "12 Main Street", "10/12/1990"),
+                new Contact(8, "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In"),
+                // values that do not pack are kept as text, exactly
+                new Contact(9, "Zoë Ünal", "+1 (555) 123-4567; ext. 2", "zoe@example.com", "Rue Sainte-Catherine", "31/02/1990"),
+                new Contact(10, "", "0012345678901234", "", "", "1/2/1990"),
+                new Contact(11, "Ben", "555-123-4567", "ben@example.com", "Line one\nLine two", "29/02/2000"));
+        ContactColumns columns = new ContactColumns(2); // grows past its first capacity
+        columns.addAll(contacts);
+
+        assertEquals(contacts.size(), columns.size());
+        for (int row = 0; row < contacts.size(); row++) {
+            Contact expected = contacts.get(row);
+            Contact actual = columns.get(row);
+            assertEquals(expected.getId(), actual.getId());
+            for (ContactField field : ContactField.values()) {
+                assertEquals(field.get(expected), field.get(actual), field + " of row " + row);
+            }
+            assertEquals(expected.getBirthdayEpochDay(), columns.getBirthdayEpochDay(row));
+        }
+    }
+    @Test
+    void phoneNumbersReadBackTheSameAsFromTheSnapshot() throws IOException {
+        String[] phoneNumbers = {"555-123-4567;5551234568", "00000000000000001", "12345678901234567",
+                "123456789012345678", "555-123-4567;", "+1 (555) 123-4567", "0"};
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < phoneNumbers.length; i++) {
+            rows.add(ContactCsv.toRow(new Contact(i + 1, "Ada", phoneNumbers[i], "", "", "")));
+        }
+        Path binary = directory.resolve("contacts.bin");
+        ContactSnapshot.write(binary, rows);
+        ContactColumns columns = new ContactColumns();
+        ContactSnapshot.read(binary, columns::add);
+        for (int row = 0; row < phoneNumbers.length; row++) {
+            assertEquals(phoneNumbers[row], columns.get(row).getPhoneNumbers());
+            long packed = PhoneNumbers.pack(phoneNumbers[row], 0, phoneNumbers[row].length());
+            if (packed != PhoneNumbers.invalid) {
+                StringBuilder text = new StringBuilder();
+                PhoneNumbers.unpack(packed, text);
+                assertEquals(phoneNumbers[row], text.toString());
+            }
+        }
+    }
+    @Test
+    void rowsOutsideTheColumnsAreRejected() {
+        ContactColumns columns = new ContactColumns();
+        columns.add(new Contact(1, "Ada", "", "", "", ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.get(-1));
+    }
+}
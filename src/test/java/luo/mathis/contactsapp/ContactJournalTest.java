@@ -0,0 +1,179 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void changesReplayOntoTheSnapshot() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben"), contact(3, "Chloe")));
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            ContactStore store = load(csv, journal);
+            assertEquals(3, store.size());
+            store.add(contact(0, "Dan\twith \\ a tab"));
+            store.update(2, ContactField.ADDRESS, "New line\nin the address");
+            store.remove(1);
+            store.importAll(List.of(contact(10, "Eve"), contact(11, "Finn")));
+            store.remove(10);
+            assertEquals(6, journal.size());
+        }
+        // after a restart, the file itself is unchanged and the journal puts the edits back
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            ContactStore store = load(csv, journal);
+            assertEquals(List.of("Ben", "Chloe", "Dan\twith \\ a tab", "Finn"), names(store));
+            assertEquals("New line\nin the address", store.find(2).getAddress());
+            assertNull(store.find(1));
+            assertEquals(6, journal.size());
+        }
+    }
+    @Test
+    void recordsByPositionStillReplay() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben"), contact(3, "Chloe")));
+        Files.writeString(ContactJournal.journalPath(csv), "#snapshot\t" + Long.toHexString(ContactJournal.checksum(csv))
+                + "\nU\t2\tNAME\tChloe Smith\nD\t0\n", StandardCharsets.UTF_8);
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            assertEquals(List.of("Ben", "Chloe Smith"), names(load(csv, journal)));
+        }
+    }
+    @Test
+    void recordCutOffMidWriteIsDropped() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben")));
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            ContactStore store = load(csv, journal);
+            store.update(1, ContactField.NAME, "Ada Lovelace");
+        }
+        Path journalPath = ContactJournal.journalPath(csv);
+        Files.writeString(journalPath, "R\t1", StandardOpenOption.APPEND);
+        long errors = ContactMetrics.errors.sum();
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            assertEquals(List.of("Ada Lovelace", "Ben"), names(load(csv, journal)));
+        }
+        assertEquals(errors, ContactMetrics.errors.sum(), "a cut off record is expected after a crash");
+        assertTrue(Files.readString(journalPath).endsWith("\tAda Lovelace\n"), "and not kept in the log");
+    }
+    @Test
+    void skippedRecordsAreCounted() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben")));
+        Files.writeString(ContactJournal.journalPath(csv), "#snapshot\t" + Long.toHexString(ContactJournal.checksum(csv))
+                + "\nX\tsomething new\nE\tnot a number\tNAME\tBen\nR\t2\n", StandardCharsets.UTF_8);
+        long errors = ContactMetrics.errors.sum();
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            assertEquals(List.of("Ada"), names(load(csv, journal)));
+        }
+        assertEquals(errors + 2, ContactMetrics.errors.sum());
+    }
+    @Test
+    void compactionWritesTheChangesIntoTheSnapshot() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben"), contact(3, "Chloe")));
+        byte[] before = Files.readAllBytes(csv);
+        ContactStore store;
+        try (ContactJournal journal = new ContactJournal(csv, 4)) {
+            store = load(csv, journal);
+            store.update(1, ContactField.NAME, "Ada Lovelace");
+            store.remove(2);
+            store.add(contact(0, "Dan"));
+            store.add(contact(0, "Eve")); // the fourth change starts a compaction with every change in it
+        }
+        Path journalPath = ContactJournal.journalPath(csv);
+        assertEquals(List.of("#snapshot\t" + Long.toHexString(ContactJournal.checksum(csv))),
+                Files.readAllLines(journalPath));
+        List<Contact> read = new ArrayList<>();
+        new MappedCsvParser().parse(csv, read::add);
+        assertEquals(names(store), read.stream().map(Contact::getName).toList());
+        // the snapshot was replaced the way save() replaces it
+        assertArrayEquals(before, Files.readAllBytes(SnapshotFormat.backupPath(csv, 1)));
+        assertFalse(Files.exists(SnapshotFormat.temporaryPath(csv)));
+        try (ContactJournal journal = new ContactJournal(csv, 4)) {
+            assertEquals(List.of("Ada Lovelace", "Chloe", "Dan", "Eve"), names(load(csv, journal)));
+        }
+    }
+    @Test
+    void crashDuringCompactionReplaysTheRecordsAfterTheCheckpoint() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben")));
+        long before = ContactJournal.checksum(csv);
+        // the compaction wrote the first two records into a new snapshot and replaced the file, but did not get
+        // to rewrite the log
+        ContactCsv.write(csv, rows(contact(1, "Ada Lovelace"), contact(2, "Ben"), contact(3, "Chloe")));
+        long after = ContactJournal.checksum(csv);
+        Files.writeString(ContactJournal.journalPath(csv), "#snapshot\t" + Long.toHexString(before) + "\n"
+                + "E\t1\tNAME\tAda Lovelace\n"
+                + "A\tChloe\tNot Filled In\tNot Filled In\tNot Filled In\tNot Filled In\t3\n"
+                + "C\t" + Long.toHexString(after) + "\t2\n"
+                + "R\t2\n", StandardCharsets.UTF_8);
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            assertEquals(List.of("Ada Lovelace", "Chloe"), names(load(csv, journal)));
+            assertEquals(1, journal.size());
+        }
+    }
+    @Test
+    void journalOfAnotherFileIsMovedAside() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, rows(contact(1, "Ada"), contact(2, "Ben")));
+        Path journalPath = ContactJournal.journalPath(csv);
+        String unmatched = "#snapshot\t1234abcd\nR\t2\n";
+        Files.writeString(journalPath, unmatched, StandardCharsets.UTF_8);
+        long errors = ContactMetrics.errors.sum();
+        try (ContactJournal journal = new ContactJournal(csv, 1000)) {
+            assertEquals(List.of("Ada", "Ben"), names(load(csv, journal)));
+        }
+        assertEquals(errors + 1, ContactMetrics.errors.sum());
+        List<Path> aside;
+        try (Stream<Path> files = Files.list(directory)) {
+            aside = files.filter(file -> file.getFileName().toString().startsWith("contacts.csv.journal.unmatched-"))
+                    .toList();
+        }
+        assertEquals(1, aside.size());
+        assertEquals(unmatched, Files.readString(aside.get(0)));
+    }
+
+    /**
+     * Loads the contacts file and replays the journal onto it, like the app does
+     */
+    private static ContactStore load(Path csv, ContactJournal journal) throws IOException {
+        ContactStore store = new ContactStore();
+        List<Contact> contacts = new ArrayList<>();
+        new MappedCsvParser().parse(csv, contacts::add);
+        store.addAll(contacts);
+        journal.open(store);
+        store.setJournal(journal, null);
+        return store;
+    }
+    private static Contact contact(long id, String name) {
+        return new Contact(id, name, "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In");
+    }
+    private static List<String[]> rows(Contact... contacts) {
+        List<String[]> rows = new ArrayList<>();
+        for (Contact contact : contacts) {
+            rows.add(ContactCsv.toRow(contact));
+        }
+        return rows;
+    }
+    private static List<String> names(ContactStore store) {
+        return store.snapshot().stream().map(Contact::getName).toList();
+    }
+}
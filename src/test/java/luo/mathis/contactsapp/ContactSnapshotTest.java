@@ -0,0 +1,136 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactSnapshotTest {
+    private static final int magic = 0x43544342; // "CTCB"
+    private static final int headerSize = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyValueReadsBackAsWritten() throws IOException {
+        Path binary = directory.resolve("contacts.bin");
+        List<Contact> contacts = contacts();
+        long checksum = ContactSnapshot.write(binary, rows(contacts));
+
+        List<Contact> read = new ArrayList<>();
+        MappedCsvParser.Stats stats = ContactSnapshot.read(binary, read::add);
+        assertEquals(contacts.size(), stats.rows());
+        assertEquals(checksum, stats.checksum());
+        assertEquals(checksum, ContactSnapshot.checksum(binary));
+        assertContacts(contacts, read, true);
+    }
+    @Test
+    void versionOneFilesWithoutIdsStillRead() throws IOException {
+        List<Contact> contacts = contacts();
+        // a version 2 record is the id delta followed by the version 1 record, an id of 0 is the single byte 0
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        Path single = directory.resolve("single.bin");
+        for (Contact contact : contacts) {
+            String[] row = ContactCsv.toRow(contact);
+            row[5] = "0";
+            ContactSnapshot.write(single, List.<String[]>of(row));
+            byte[] bytes = Files.readAllBytes(single);
+            assertEquals(0, bytes[headerSize]);
+            records.write(bytes, headerSize + 1, bytes.length - headerSize - 1);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(records.toByteArray());
+        ByteBuffer header = ByteBuffer.allocate(headerSize).putInt(magic).putInt(1).putInt(contacts.size())
+                .putInt((int) crc.getValue());
+        Path versionOne = directory.resolve("version1.bin");
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(header.array());
+        file.write(records.toByteArray());
+        Files.write(versionOne, file.toByteArray());
+
+        List<Contact> read = new ArrayList<>();
+        ContactSnapshot.read(versionOne, read::add);
+        assertContacts(contacts, read, false);
+        for (Contact contact : read) {
+            assertEquals(0, contact.getId()); // the store assigns them
+        }
+        // saving it again writes the current version, ids and all
+        Path versionTwo = directory.resolve("version2.bin");
+        ContactSnapshot.write(versionTwo, rows(contacts));
+        assertEquals(2, ByteBuffer.wrap(Files.readAllBytes(versionTwo)).getInt(4));
+    }
+    @Test
+    void csvAndBinaryConvertBothWays() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        Path binary = directory.resolve("contacts.bin");
+        Path back = directory.resolve("back.csv");
+        List<Contact> contacts = contacts();
+        ContactCsv.write(csv, rows(contacts));
+
+        assertEquals(contacts.size(), ContactSnapshot.convert(csv, binary));
+        assertEquals(contacts.size(), ContactSnapshot.convert(binary, back));
+        List<Contact> read = new ArrayList<>();
+        new MappedCsvParser().parse(back, read::add);
+        assertContacts(contacts, read, true);
+    }
+    @Test
+    void damagedFilesAreRejected() throws IOException {
+        Path binary = directory.resolve("contacts.bin");
+        ContactSnapshot.write(binary, rows(contacts()));
+        byte[] bytes = Files.readAllBytes(binary);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(binary, bytes);
+        List<Contact> read = new ArrayList<>();
+        IOException damaged = assertThrows(IOException.class, () -> ContactSnapshot.read(binary, read::add));
+        assertTrue(damaged.getMessage().contains("checksum"));
+        assertTrue(read.isEmpty(), "nothing is read from a damaged file");
+
+        Files.writeString(binary, "Ada,ada@example.com,1 Main St,01/02/1990,555-123-4567\n");
+        assertThrows(IOException.class, () -> ContactSnapshot.read(binary, read::add));
+    }
+
+    /**
+     * Contacts with every kind of value the format packs or keeps as text, and ids that go up and down
+     */
+    private static List<Contact> contacts() {
+        return List.of(
+                new Contact(1, "Ada Lovelace", "555-123-4567;5551234568", "ada@example.com", "12 Main Street", "10/12/1990"),
+                new Contact(2, "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In"),
+                new Contact(1000000, "", "", "", "", ""),
+                new Contact(3, "Zoë Ünal, 東京", "+1 (555) 123-4567", "zoe@example.com", "Line one\nLine \"two\"", "31/02/1990"),
+                new Contact(4, "Leading zeros", "0012345678901234;00000000000000001", "x@y.z", "tab\tinside", "1/2/1990"),
+                new Contact(5, "Too many digits", "123456789012345678", "x@y.z", "Somewhere", "29/02/2000"),
+                new Contact(6, "Old and new", "555-123-4567;", "x@y.z", "Somewhere", "01/01/0001"),
+                new Contact(7, "Far future", "5551234567", "x@y.z", "Somewhere", "31/12/9999"));
+    }
+    private static List<String[]> rows(List<Contact> contacts) {
+        List<String[]> rows = new ArrayList<>();
+        for (Contact contact : contacts) {
+            rows.add(ContactCsv.toRow(contact));
+        }
+        return rows;
+    }
+    private static void assertContacts(List<Contact> expected, List<Contact> actual, boolean ids) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            if (ids) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId(), "id of row " + i);
+            }
+            for (ContactField field : ContactField.values()) {
+                assertEquals(field.get(expected.get(i)), field.get(actual.get(i)), field + " of row " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContactSortedListTest {
+
+    @Test
+    void missingBirthdaysAndNumbersSortLastBothWays() {
+        ObservableList<Contact> contacts = FXCollections.observableArrayList(
+                contact(1, "Not Filled In", "10/12/1990"),
+                contact(2, "555-123-4567", "Not Filled In"),
+                contact(3, "555-987-6543", "01/02/1985"),
+                contact(4, "call the office", "31/02/1990"));
+        ContactSortedList sorted = new ContactSortedList(contacts);
+
+        sorted.setSortOrder(List.of(new ContactSortKeys.SortColumn(ContactField.BIRTHDAY, true)));
+        assertEquals(List.of(3L, 1L, 2L, 4L), ids(sorted));
+        sorted.setSortOrder(List.of(new ContactSortKeys.SortColumn(ContactField.BIRTHDAY, false)));
+        assertEquals(List.of(1L, 3L, 2L, 4L), ids(sorted));
+        sorted.setSortOrder(List.of(new ContactSortKeys.SortColumn(ContactField.PHONE_NUMBERS, true)));
+        assertEquals(List.of(2L, 3L, 1L, 4L), ids(sorted));
+        sorted.setSortOrder(List.of(new ContactSortKeys.SortColumn(ContactField.PHONE_NUMBERS, false)));
+        assertEquals(List.of(3L, 2L, 1L, 4L), ids(sorted));
+
+        // and a contact added to the sorted list goes among them
+        contacts.add(contact(5, "Not Filled In", "Not Filled In"));
+        contacts.add(contact(6, "555-555-5555", "Not Filled In"));
+        assertEquals(List.of(3L, 6L, 2L, 1L, 4L, 5L), ids(sorted));
+    }
+
+    private static Contact contact(long id, String phoneNumbers, String birthday) {
+        return new Contact(id, "Contact " + id, phoneNumbers, "Not Filled In", "Not Filled In", birthday);
+    }
+    private static List<Long> ids(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getId).toList();
+    }
+}
@@ -0,0 +1,103 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactStoreTest {
+
+    @Test
+    void randomChangesMatchAPlainList() {
+        ContactStore store = new ContactStore();
+        List<Contact> expected = new ArrayList<>();
+        Random random = new Random(1);
+        for (int step = 0; step < 50000; step++) {
+            int choice = random.nextInt(10);
+            if (choice < 4 || expected.isEmpty()) {
+                Contact contact = contact(0, "Contact " + step);
+                store.add(contact);
+                expected.add(contact);
+            } else if (choice < 7) {
+                Contact removed = expected.remove(random.nextInt(expected.size()));
+                assertTrue(store.remove(removed.getId()));
+                assertFalse(store.remove(removed.getId()));
+            } else if (choice < 9) {
+                int index = random.nextInt(expected.size());
+                Contact updated = store.update(expected.get(index), ContactField.NAME, "Edited " + step);
+                expected.set(index, updated);
+            } else {
+                List<Contact> removed = new ArrayList<>();
+                for (int i = 0; i < 5 && !expected.isEmpty(); i++) {
+                    removed.add(expected.remove(random.nextInt(expected.size())));
+                }
+                store.removeAll(removed);
+            }
+            if (step % 1000 == 0) {
+                assertStore(expected, store);
+            }
+        }
+        assertStore(expected, store);
+    }
+    @Test
+    void removingMostContactsKeepsTheRestInOrder() {
+        ContactStore store = new ContactStore();
+        List<Contact> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            expected.add(contact(i + 1, "Contact " + i));
+        }
+        store.addAll(expected);
+        // every other one by id, then most of the rest in one go, which drops the empty rows along the way
+        for (int i = 0; i < 20000; i += 2) {
+            assertTrue(store.remove(i + 1));
+        }
+        List<Contact> removed = new ArrayList<>();
+        for (int i = 1; i < 19000; i += 2) {
+            removed.add(expected.get(i));
+        }
+        store.removeAll(removed);
+        List<Contact> left = new ArrayList<>();
+        for (int i = 19001; i < 20000; i += 2) {
+            left.add(expected.get(i));
+        }
+        assertStore(left, store);
+        Contact added = contact(0, "Added");
+        store.add(added);
+        assertEquals(20001, added.getId());
+        assertSame(added, store.get(left.size()));
+        assertNull(store.find(1));
+    }
+    @Test
+    void replayedRecordsByPositionSkipRemovedRows() {
+        ContactStore store = new ContactStore();
+        store.addAll(List.of(contact(1, "Ada"), contact(2, "Ben"), contact(3, "Chloe"), contact(4, "Dan")));
+        store.replay(List.of("R\t2", "U\t1\tNAME\tChloe Smith", "D\t0"));
+        assertEquals(List.of("Chloe Smith", "Dan"), store.snapshot().stream().map(Contact::getName).toList());
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(2));
+    }
+
+    /**
+     * Checks every way of reading the store, and the published list, against the expected contacts
+     */
+    private static void assertStore(List<Contact> expected, ContactStore store) {
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected, store.snapshot());
+        assertEquals(expected, store.getContacts());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), store.get(i));
+            assertSame(expected.get(i), store.find(expected.get(i).getId()));
+        }
+        assertEquals(expected.size(), store.snapshotRows().size());
+    }
+    private static Contact contact(long id, String name) {
+        return new Contact(id, name, "Not Filled In", "Not Filled In", "Not Filled In", "Not Filled In");
+    }
+}
@@ -0,0 +1,146 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Rows written by CsvWriter must read back unchanged through CsvReader and, as contacts, through
+ * MappedCsvParser
+ */
+class CsvRoundTripTest {
+    // every value CsvWriter has to quote, and some it does not
+    private static final String[] awkward = {
+            "plain",
+            "",
+            "comma, inside",
+            "semi;colon",
+            "tab\tinside",
+            "\"quoted\"",
+            "say \"\"twice\"\"",
+            "\"",
+            "line one\nline two",
+            "windows\r\nline break",
+            "lone\rcarriage return",
+            "  spaces kept  ",
+            "Zoë Ünal, 東京",
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readerReadsWhatTheWriterWrote() throws IOException {
+        for (char delimiter : new char[]{',', ';', '\t', '|'}) {
+            String[] header = {"Name", "Email", "Address", "Birthday", "Phone Numbers"};
+            List<String[]> rows = awkwardRows();
+            StringWriter text = new StringWriter();
+            try (CsvWriter out = new CsvWriter(text, delimiter)) {
+                out.writeRow(header);
+                for (String[] row : rows) {
+                    out.writeRow(row);
+                }
+            }
+            try (CsvReader in = new CsvReader(new StringReader(text.toString()), delimiter, true)) {
+                assertArrayEquals(header, in.getHeader());
+                for (String[] row : rows) {
+                    assertArrayEquals(row, in.readRow(), "delimiter " + (int) delimiter);
+                }
+                assertNull(in.readRow());
+                assertEquals(rows.size(), in.getRows());
+            }
+        }
+    }
+    @Test
+    void singleLinesRoundTrip() {
+        for (String[] row : awkwardRows()) {
+            assertArrayEquals(row, CsvReader.parse(CsvWriter.format(row, ';'), ';'));
+        }
+    }
+    @Test
+    void readerTakesCrlfLineBreaks() throws IOException {
+        String text = "Name,Note\r\n"
+                + "Ada,\"two\r\nlines\"\r\n"
+                + "Ben,\"he said \"\"hi\"\"\"\r\n"
+                + "\r\n"
+                + "Chloe,no line break at the end";
+        try (CsvReader in = new CsvReader(new StringReader(text), ',', true)) {
+            assertArrayEquals(new String[]{"Name", "Note"}, in.getHeader());
+            assertArrayEquals(new String[]{"Ada", "two\r\nlines"}, in.readRow());
+            assertArrayEquals(new String[]{"Ben", "he said \"hi\""}, in.readRow());
+            assertArrayEquals(new String[]{""}, in.readRow()); // a blank line is one empty field
+            assertArrayEquals(new String[]{"Chloe", "no line break at the end"}, in.readRow());
+            assertNull(in.readRow());
+        }
+    }
+    @Test
+    void mappedParserReadsWhatTheWriterWrote() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        List<Contact> contacts = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        long id = 1;
+        // the parser trims fields like the old reader did, so values here have no outer whitespace, and commas
+        // in phone numbers are always written as semicolons
+        for (String value : awkward) {
+            String trimmed = value.strip();
+            String phoneNumbers = "555-123-4567;" + trimmed.replace(',', ';');
+            Contact contact = new Contact(id++, trimmed, phoneNumbers, trimmed, trimmed, trimmed);
+            contacts.add(contact);
+            rows.add(ContactCsv.toRow(contact));
+        }
+        ContactCsv.write(csv, rows);
+
+        // one window, and windows just longer than a row, so rows are cut at their edges
+        for (int windowSize : new int[]{256 * 1024 * 1024, 256}) {
+            List<Contact> parsed = new ArrayList<>();
+            MappedCsvParser.Stats stats = new MappedCsvParser(windowSize).parse(csv, parsed::add);
+            assertEquals(contacts.size(), stats.rows());
+            assertEquals(ContactJournal.checksum(csv), stats.checksum());
+            assertContacts(contacts, parsed);
+        }
+    }
+    @Test
+    void mappedParserTakesCrlfLineBreaks() throws IOException {
+        Path csv = directory.resolve("windows.csv");
+        Files.writeString(csv, "Ada,ada@example.com,\"1 Main St\r\nApt 2\",01/02/1990,555-123-4567,1\r\n"
+                + "Ben,ben@example.com,\"2 \"\"Oak\"\" Ave\",Not Filled In,Not Filled In,2\r\n"
+                + "too,short\r\n"
+                + "Chloe,chloe@example.com,3 Elm St,03/04/1985,5551234567\r\n", StandardCharsets.UTF_8);
+        List<Contact> parsed = new ArrayList<>();
+        new MappedCsvParser().parse(csv, parsed::add);
+        assertContacts(List.of(
+                new Contact(1, "Ada", "555-123-4567", "ada@example.com", "1 Main St\r\nApt 2", "01/02/1990"),
+                new Contact(2, "Ben", "Not Filled In", "ben@example.com", "2 \"Oak\" Ave", "Not Filled In"),
+                new Contact(0, "Chloe", "5551234567", "chloe@example.com", "3 Elm St", "03/04/1985")), parsed);
+    }
+
+    private static List<String[]> awkwardRows() {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < awkward.length; i++) {
+            rows.add(new String[]{awkward[i], awkward[(i + 1) % awkward.length], String.valueOf(i),
+                    awkward[(i + 5) % awkward.length], ""});
+        }
+        return rows;
+    }
+    private static void assertContacts(List<Contact> expected, List<Contact> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId(), "id of row " + i);
+            for (ContactField field : ContactField.values()) {
+                assertEquals(field.get(expected.get(i)), field.get(actual.get(i)), field + " of row " + i);
+            }
+        }
+    }
+}
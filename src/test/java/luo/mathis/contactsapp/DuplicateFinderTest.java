@@ -0,0 +1,34 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFinderTest {
+
+    @Test
+    void numbersWrittenDifferentlyMatch() {
+        Contact ada = new Contact(1, "Ada Lovelace", "+1 (555) 123-4567", "Not Filled In", "Not Filled In", "Not Filled In");
+        Contact lovelace = new Contact(2, "Lovelace, Ada", "555.123.4567;0044 20 7946 0000", "Not Filled In",
+                "Not Filled In", "Not Filled In");
+        Contact other = new Contact(3, "Ada Lovelace", "555-123-4568", "Not Filled In", "Not Filled In", "Not Filled In");
+        List<DuplicateFinder.Group> groups = new DuplicateFinder(0.7, 1000).find(List.of(ada, lovelace, other));
+        assertEquals(1, groups.size());
+        assertEquals(List.of(ada, lovelace), groups.get(0).contacts());
+    }
+    @Test
+    void mergeKeepsEachNumberOnce() {
+        Contact ada = new Contact(1, "Ada Lovelace", "+1 (555) 123-4567;call the office", "ada@example.com",
+                "Not Filled In", "Not Filled In");
+        Contact lovelace = new Contact(2, "Lovelace, Ada", "555.123.4567; call the office;+44 20 7946 0000",
+                "Not Filled In", "12 Main Street", "10/12/1990");
+        Map<ContactField, String> merged = DuplicateFinder.merge(List.of(ada, lovelace));
+        assertEquals("+1 (555) 123-4567;call the office;+44 20 7946 0000", merged.get(ContactField.PHONE_NUMBERS));
+        assertEquals("12 Main Street", merged.get(ContactField.ADDRESS));
+        assertTrue(merged.get(ContactField.NAME).startsWith("Ada"));
+    }
+}
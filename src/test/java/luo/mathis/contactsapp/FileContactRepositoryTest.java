@@ -0,0 +1,49 @@
+package luo.mathis.contactsapp;
+
+import javafx.collections.transformation.FilteredList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileContactRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void searchKeepsShowingEditedAndAddedMatches() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        ContactCsv.write(csv, List.<String[]>of(
+                ContactCsv.toRow(new Contact(1, "Ada Lovelace", "555-123-4567", "ada@example.com", "12 Main Street", "10/12/1990")),
+                ContactCsv.toRow(new Contact(2, "Ben Smith", "555-987-6543", "ben@example.com", "3 Oak Avenue", "01/02/1985"))));
+        try (FileContactRepository repository = FileContactRepository.open(csv)) {
+            // the table's filter, on the list the repository hands out
+            FilteredList<Contact> filtered = new FilteredList<>(repository.findAll());
+            filtered.setPredicate(repository.matcher("lovelace"));
+            assertEquals(List.of("Ada Lovelace"), names(filtered));
+
+            repository.update(1, ContactField.ADDRESS, "14 Main Street");
+            assertEquals(List.of("Ada Lovelace"), names(filtered));
+            assertEquals("14 Main Street", filtered.get(0).getAddress());
+
+            repository.add(new Contact("Augusta Lovelace", "555-111-2222", "augusta@example.com", "12 Main Street",
+                    "10/12/1990"));
+            assertEquals(List.of("Ada Lovelace", "Augusta Lovelace"), names(filtered));
+
+            // an edit that stops matching leaves, one that starts matching comes in
+            repository.update(1, ContactField.NAME, "Ada King");
+            repository.update(2, ContactField.NAME, "Ben Lovelace");
+            assertEquals(List.of("Ben Lovelace", "Augusta Lovelace"), names(filtered));
+            assertEquals(3, repository.size());
+        }
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getName).toList();
+    }
+}
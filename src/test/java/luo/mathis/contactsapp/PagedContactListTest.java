@@ -0,0 +1,47 @@
+package luo.mathis.contactsapp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PagedContactListTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesReadTheSameContactsAsTheWholeFile() throws IOException {
+        Path csv = directory.resolve("contacts.csv");
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String address = i % 7 == 0 ? "Flat " + i + "\nSecond line, \"quoted\"" : i + " Main Street";
+            rows.add(ContactCsv.toRow(new Contact(i + 1, "Contact " + i, "555-010-" + (1000 + i), "c" + i + "@example.com",
+                    address, "01/02/1990")));
+        }
+        ContactCsv.write(csv, rows);
+        List<Contact> expected = new ArrayList<>();
+        new MappedCsvParser().parse(csv, expected::add);
+
+        try (PagedContactList paged = new PagedContactList(CsvRowIndex.open(csv), 100, 3)) {
+            assertEquals(expected.size(), paged.size());
+            // in random order, so pages are dropped and read again
+            Random random = new Random(1);
+            for (int i = 0; i < 5000; i++) {
+                int row = random.nextInt(expected.size());
+                Contact contact = paged.get(row);
+                assertEquals(expected.get(row).getId(), contact.getId());
+                for (ContactField field : ContactField.values()) {
+                    assertEquals(field.get(expected.get(row)), field.get(contact), field + " of row " + row);
+                }
+            }
+            assertEquals(3, paged.getStats().cachedPages());
+        }
+    }
+}